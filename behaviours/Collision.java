@@ -1,10 +1,11 @@
 package behaviours;
 import core.Robot;
+import hardware.CancelToken;
 import lejos.robotics.subsumption.Behavior;
 
 public class Collision implements Behavior {
     private Robot robot;
-    private boolean suppressed;
+    private final CancelToken suppression = new CancelToken(); // cancelled by suppress()
     
     public Collision( Robot robot ){
         this.robot = robot;
@@ -36,7 +37,7 @@ public class Collision implements Behavior {
      */
     @Override
     public void action() {
-        suppressed = false;
+        suppression.reset();
         
         log("----> ROBOT HAS COLLIDED");
         
@@ -46,8 +47,7 @@ public class Collision implements Behavior {
         
         robot.getPilot().travel(-dis, true);
         
-        while(robot.getPilot().isMoving() && !suppressed)
-            Thread.yield();
+        robot.getPilot().waitComplete(suppression);
         
         robot.getPilot().stop();
         
@@ -57,8 +57,7 @@ public class Collision implements Behavior {
         if ( dis2 > cell_half_distance ) {
             robot.getPilot().travel(dis2-cell_half_distance, true);
             
-            while(robot.getPilot().isMoving() && !suppressed)
-                Thread.yield();
+            robot.getPilot().waitComplete(suppression);
         } 
     }
     
@@ -67,7 +66,7 @@ public class Collision implements Behavior {
      */
     @Override
     public void suppress() {
-        suppressed = true; // can be suppressed by stop and scanning behaviours
+        suppression.cancel(); // can be suppressed by stop and scanning behaviours
     }
 
 }
\ No newline at end of file
@@ -2,22 +2,42 @@ package behaviours;
 import java.util.ArrayList;
 import java.util.List;
 import core.Robot;
+import hardware.CancelToken;
 import lejos.robotics.subsumption.Behavior;
+import libs.DistanceTable;
 import libs.OccupancyGrid;
+import libs.RotationPlanner;
+import libs.TourPlanner;
 import libs.WaypointResolver;
 
 public class Drive implements Behavior {
     private final int CELL_DISTANCE = 25; // cm
+    private final double STOP_TIME  = 0.3; // s lost stopping/starting around every pilot move (corrected by measured timings)
     
     private Robot robot;
-    private boolean suppressed;
+    private final CancelToken suppression = new CancelToken(); // cancelled by suppress()
+    private WaypointResolver resolver; // kept between actions, replans incrementally
+    private RotationPlanner rotations; // quickest path (turns included) to the chosen cell
+    private TourPlanner tourPlanner;   // visiting order of the frontier cells (tour policy only)
+    private final boolean tour;        // follow a planned tour of the frontier instead of going greedily
     
     /**
      * Constructor of the behaviour "Collision"
      * @param robot
      */
     public Drive( Robot robot ){
+        this(robot, false);
+    }
+    
+    /**
+     * Constructor of the behaviour "Collision"
+     * @param robot
+     * @param tour true to visit the frontier cells in the order of a (repaired every action) short tour,
+     *             false for the greedy policy (free unvisited neighbour first, else the closest frontier cell)
+     */
+    public Drive( Robot robot, boolean tour ){
         this.robot = robot;
+        this.tour  = tour;
     }
     
     /**
@@ -42,10 +62,11 @@ public class Drive implements Behavior {
      * Begin by checking if there are any FREE, UNVISITED, SCANNED neighbours.
      * If there are pick one and move to it. 
      * Else path find to a FREE, UNVISITED SCANNED cell. 
+     * With the tour policy, path find to the next cell of the tour instead.
      */
     @Override
     public void action() {
-       suppressed = false;
+       suppression.reset();
        
        // Calculate next destination, drive to it, update robot state, start scan again
        OccupancyGrid.GridCell 			 currentCell = robot.getCurrentCell();
@@ -54,7 +75,24 @@ public class Drive implements Behavior {
        
        log("CurrentCell: " + currentCell.x + "," + currentCell.y);
        
-       if ( !neighbours.isEmpty() ) { // there are free, scanned, unvisited neighbour cells
+       if ( tour ) {
+           OccupancyGrid current_grid = robot.getGrid();
+           updateResolver(current_grid);
+           
+           if ( tourPlanner == null )
+               tourPlanner = new TourPlanner(resolver);
+           
+           tourPlanner.refresh(currentCell);
+           nextCell = tourPlanner.next();
+           
+           if ( nextCell != null ) {
+               log("Next cell of the tour: " + nextCell.x + "," + nextCell.y + " (tour length " + tourPlanner.getLength() + " cells)");
+               followPath(quickestPath(currentCell, nextCell, resolver.calculatePath(currentCell, nextCell)));
+           } else {
+               log("No reachable free, scanned unvisited cells left! (end of lap)");
+               robot.setLapCompleted(true);
+           }
+       } else if ( !neighbours.isEmpty() ) { // there are free, scanned, unvisited neighbour cells
            // Randomly pick a cell or pick first so that we go around in a circle? **IF THE BOT DOESNT GO AROUND IN THE SQUARE BORDER CHECK THIS CODE!**
            //int rnd = new Random().nextInt(neighbours.size());
            nextCell = neighbours.get(0);
@@ -62,62 +100,42 @@ public class Drive implements Behavior {
            log("Free unvisited neighbours found - picked: " + nextCell.x + "," + nextCell.y);
            log("[rotating towards picked next cell]");
            
-           robot.rotateTowardsCell(nextCell);
+           robot.rotateTowardsCell(nextCell, suppression);
            
-           while( robot.getPilot().isMoving() && !suppressed )  // Does rotation trigger isMoving? probably.
-                 Thread.yield();
+           robot.getPilot().waitComplete(suppression);
            
            log("[traveling towards picked next cell]");
            
            robot.getPilot().travel(CELL_DISTANCE, true);
            
-           while( robot.getPilot().isMoving() && !suppressed )
-               Thread.yield();
+           robot.getPilot().waitComplete(suppression);
            
            robot.setCurrentCell(nextCell);
        } else { 												// must pathfind to a free, unvisited, scanned neighbour cell
            log("No free, unvisted neighbour cells found! [Attempting to pathfind]...");
           
-           OccupancyGrid current_grid 					   = robot.getGrid();
-           ArrayList<OccupancyGrid.GridCell> possibleCells = current_grid.calculateScannedUnvisited();	
+           OccupancyGrid current_grid = robot.getGrid();
            
-           if ( !possibleCells.isEmpty() ) {
+           if ( current_grid.getFrontierSize() > 0 ) {
                log("Found free, scanned unvisted cells!");
                
-               List path = null;
-               for( OccupancyGrid.GridCell goalCell : possibleCells ) {
-                   WaypointResolver wr = new WaypointResolver(current_grid);
-                   path = wr.calculatePath(currentCell, goalCell);
+               // repair the last plan with what changed since, to whichever of them is closest
+               updateResolver(current_grid);
+               
+               // null straight away (no search) when all of them are closed off from the robot
+               List<WaypointResolver.Node> path = resolver.calculatePathToFrontier(currentCell);
+               
+               if( path != null && !path.isEmpty() ) {
+                   OccupancyGrid.GridCell goalCell = path.get(path.size()-1).getCell();
+                   log("Found a path to cell: " + goalCell.x + ", " + goalCell.y + " (" + resolver.getLastExpanded() + " nodes expanded)");
                    
-                   if( path != null ) { // avoid calculating any more
-                       log("Found a path to cell: " + goalCell.x + ", " + goalCell.y);
-                       break;
-                   }
+                   path = quickestPath(currentCell, goalCell, path);
                }
                
                if( path != null ) {
-                   log(">> Beggining path following:");
-                   for( Object o : path ) {
-                       WaypointResolver.Node  node = (WaypointResolver.Node)o;
-                       OccupancyGrid.GridCell pathCell = node.getCell();
-                       
-                       log("(Cell on path) Rotating & Traveling to cell: " + pathCell.x + ", " + pathCell.y);
-                       robot.rotateTowardsCell(pathCell);
-    
-                       while( robot.getPilot().isMoving() && !suppressed )  // Does rotation trigger isMoving? probably.
-                             Thread.yield();
-                       
-                       robot.getPilot().travel(CELL_DISTANCE-1, true);
-                       
-                       while( robot.getPilot().isMoving() && !suppressed )  // Does rotation trigger isMoving? probably.
-                             Thread.yield();
-                       
-                       robot.getPilot().stop();
-                       robot.setCurrentCell(pathCell);
-                   }
-                   log(">> Path completed!");
+                   followPath(path);
                } else { // completed!
-                   log("No paths were found! (possible end of lap?)");
+                   log("No paths were found! (none of them can be reached, end of lap)");
                    robot.setLapCompleted(true);
                }
            } else {
@@ -130,12 +148,91 @@ public class Drive implements Behavior {
        robot.setScanning(true);
     }
     
+    /**
+     * Creates the resolver on the first use, afterwards repairs it with what changed in the grid since.
+     * @param grid
+     */
+    private void updateResolver( OccupancyGrid grid ) {
+        if ( resolver == null ) // small arenas: paths straight from an all-pairs table
+            resolver = new WaypointResolver(grid, grid.WIDTH * grid.HEIGHT <= DistanceTable.MAX_CELLS);
+        else
+            resolver.refresh();
+    }
+    
+    /**
+     * Replans a path to the same goal cell so that it takes the least time (turns included).
+     * Returns the given path if there is no quicker one.
+     * @param currentCell
+     * @param goalCell
+     * @param path fewest cells path to the goal cell (can be null)
+     * @return
+     */
+    private List<WaypointResolver.Node> quickestPath( OccupancyGrid.GridCell currentCell, OccupancyGrid.GridCell goalCell, List<WaypointResolver.Node> path ) {
+        if ( path == null || path.isEmpty() )
+            return path;
+        
+        // same goal, but the path with the least turning
+        if ( rotations == null )
+            rotations = RotationPlanner.fromSpeeds(resolver, CELL_DISTANCE, robot.getLinearSpeed(), robot.getAngularSpeed(), STOP_TIME);
+        
+        int heading                              = RotationPlanner.headingOf(robot.getAngle());
+        double cellsTime                         = rotations.predictTime(currentCell, heading, path);
+        List<WaypointResolver.Node> quickestPath = rotations.calculatePath(currentCell, heading, goalCell);
+        
+        if ( quickestPath == null )
+            return path;
+        
+        log("Predicted time: " + rotations.getPredictedTime() + "s (fewest cells path: " + cellsTime + "s)");
+        return quickestPath;
+    }
+    
+    /**
+     * Drives along a path of WaypointResolver nodes, cell by cell.
+     * @param path
+     */
+    private void followPath( List<WaypointResolver.Node> path ) {
+        if ( path == null )
+            return;
+        
+        log(">> Beggining path following:");
+        for( WaypointResolver.Node node : path ) {
+            OccupancyGrid.GridCell pathCell = node.getCell();
+            
+            log("(Cell on path) Rotating & Traveling to cell: " + pathCell.x + ", " + pathCell.y);
+            int  heading = RotationPlanner.headingOf(robot.getAngle());
+            long start   = robot.getClock().currentTimeMillis();
+            
+            robot.rotateTowardsCell(pathCell, suppression);
+    
+            robot.getPilot().waitComplete(suppression);
+            
+            int turned = (RotationPlanner.headingOf(robot.getAngle()) - heading) & 3;
+            long moved = robot.getClock().currentTimeMillis();
+            
+            robot.getPilot().travel(CELL_DISTANCE-1, true);
+            
+            robot.getPilot().waitComplete(suppression);
+            
+            robot.getPilot().stop();
+            
+            // measured timings correct the planner's costs
+            if ( rotations != null && !suppression.isCancelled() ) {
+                if ( turned != 0 )
+                    rotations.observeTurn(turned == 2 ? 2 : 1, (moved - start) / 1000.0);
+                rotations.observeTravel((robot.getClock().currentTimeMillis() - moved) / 1000.0);
+            }
+            
+            robot.setCurrentCell(pathCell);
+        }
+        log(">> Path completed!");
+    }
+    
     /**
      * Suppression method. (Sets a boolean flag)
      */
     @Override
     public void suppress() {
-        suppressed = true; // can be suppressed by stop, scan, collision
+        suppression.cancel(); // can be suppressed by stop, scan, collision
     }
 
 }
\ No newline at end of file
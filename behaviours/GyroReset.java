@@ -3,7 +3,7 @@ package behaviours;
 import java.util.ArrayList;
 
 import core.Robot;
-import lejos.hardware.Sound;
+import hardware.CancelToken;
 import lejos.robotics.subsumption.Behavior;
 import libs.OccupancyGrid;
 import libs.OccupancyGrid.GridCell;
@@ -15,7 +15,7 @@ public class GyroReset implements Behavior {
 
     private Robot robot;
     private int countResets;
-    private boolean suppressed;
+    private final CancelToken suppression = new CancelToken(); // cancelled by suppress()
     private OccupancyGrid.GridCell lastResetCell;
     
     /**
@@ -44,8 +44,8 @@ public class GyroReset implements Behavior {
         GridCell currentCell = robot.getCurrentCell();
         GridCell previousCell= robot.getPreviousCell();
         return robot.isNeedingGyroReset() 
-                    && ( lastResetCell != previousCell )
-                    && ( currentCell.isNextToWall() || !grid.getBlockNeighbours(currentCell).isEmpty());
+                    && ( previousCell != null && !previousCell.equals(lastResetCell) )
+                    && ( currentCell.isNextToWall() || grid.getNeighbourMask(currentCell.x, currentCell.y, OccupancyGrid.NEIGHBOUR_BLOCKED) != 0 );
     }
     
     /**
@@ -61,12 +61,12 @@ public class GyroReset implements Behavior {
         log("Attempting to perform gyro reset movement");
         
         try {
-            Thread.sleep(200);
+            robot.getClock().sleep(200);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
                 
-        float dis		 = robot.getDistance();
+        float dis		 = robot.getDistance(robot.DISTANCE_WINDOW);
         float travel_dis = dis * 100;
         
         final float EXTREME_DIS = 0.3f;
@@ -79,22 +79,19 @@ public class GyroReset implements Behavior {
         
         robot.getPilot().travel(travel_dis, true);
         
-        while(robot.getPilot().isMoving() && !suppressed)
-            Thread.yield();
+        robot.getPilot().waitComplete(suppression);
         
         robot.resetGyro(map_ang);
         
         robot.getPilot().travel(-BACK_DISTANCE, true); // make sure you go back the distance from contact to center and not travel dis!
         
-        while(robot.getPilot().isMoving() && !suppressed)
-            Thread.yield();
+        robot.getPilot().waitComplete(suppression);
         
         log("Rotating back with ang: " + -rot_ang);
         map_ang = Utility.ShortestRotationAngle(map_ang);
         robot.getPilot().rotate(-rot_ang, true); // rotate back to scan cell
         
-        while(robot.getPilot().isMoving() && !suppressed)
-            Thread.yield();
+        robot.getPilot().waitComplete(suppression);
         
         log("Gyro reset movement completed!");
     }
@@ -121,21 +118,20 @@ public class GyroReset implements Behavior {
                 return;
             }
             
-            Sound.beepSequenceUp();
+            robot.getHardware().getSpeaker().beepSequenceUp();
             
             float sta_ang = robot.getAngle();
             float map_ang = 0;
             float rot_ang = 0;
             
-            robot.rotateTowardsCell(blockCell);
+            robot.rotateTowardsCell(blockCell, suppression);
             
             map_ang = robot.getGrid().getAngleToCell(currentCell, blockCell);
             rot_ang = -(sta_ang - robot.getAngle());
             
             log("Using nearby block: " + blockCell.x + ", " + blockCell.y + " map ang: " + map_ang + " rot ang" + rot_ang);
             
-            while (robot.getPilot().isMoving() && !suppressed)
-                Thread.yield();
+            robot.getPilot().waitComplete(suppression);
             
             performMovement(map_ang, rot_ang);
         }
@@ -176,7 +172,7 @@ public class GyroReset implements Behavior {
                 return;
             }
             
-            Sound.beepSequenceUp();
+            robot.getHardware().getSpeaker().beepSequenceUp();
             
             float sta_ang = robot.getAngle();
             float rot_ang = 0;
@@ -189,8 +185,7 @@ public class GyroReset implements Behavior {
             
             robot.getPilot().rotate(rot_ang, true);
             
-            while(robot.getPilot().isMoving() && !suppressed)
-                Thread.yield();
+            robot.getPilot().waitComplete(suppression);
             
             performMovement(map_ang, rot_ang);
         }
@@ -204,21 +199,21 @@ public class GyroReset implements Behavior {
      */
     @Override
     public void action() {
-        suppressed = false;
+        suppression.reset();
         
         log("===== RESETING GYRO SEQUENCE =====");
         countResets = 0;
         
         // to increase percsion of centering
-        robot.getPilot().setAngularSpeed(robot.DEFAULT_ANGULAR_SPEED/1.25);
-        robot.getPilot().setLinearSpeed(robot.DEFAULT_LINEAR_SPEED/1.5);
+        robot.getPilot().setAngularSpeed(robot.getAngularSpeed()/1.25);
+        robot.getPilot().setLinearSpeed(robot.getLinearSpeed()/1.5);
         
         // Always try to perform both if possible. (Like that the robot gets centered perfectly!)
         blockReset();
         wallReset();
         
-        robot.getPilot().setAngularSpeed(robot.DEFAULT_ANGULAR_SPEED);
-        robot.getPilot().setLinearSpeed(robot.DEFAULT_LINEAR_SPEED);
+        robot.getPilot().setAngularSpeed(robot.getAngularSpeed());
+        robot.getPilot().setLinearSpeed(robot.getLinearSpeed());
         
         lastResetCell = robot.getCurrentCell();
         robot.setNeedingGyroReset(false);
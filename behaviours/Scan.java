@@ -2,24 +2,39 @@ package behaviours;
 import java.util.ArrayList;
 
 import core.Robot;
-import lejos.hardware.Sound;
-import lejos.hardware.motor.EV3MediumRegulatedMotor;
+import hardware.CancelToken;
+import hardware.Motor;
 import lejos.robotics.subsumption.Behavior;
 import libs.OccupancyGrid;
 import libs.Utility;
  
 public class Scan implements Behavior {
     
-    private final float DISTANCE_LIMIT = 0.135f;
+    public static final float DEFAULT_DISTANCE_LIMIT = 0.135f;
+    
+    private final float DISTANCE_LIMIT;          // readings up to this distance are a block on the neighbour cell
+    private final float CELL_SIZE      = 0.25f;  // m
+    private final float MAX_RANGE      = 1.5f;   // readings over this distance are treated as "nothing found"
+    private final int CONFIDENT_OBSERVATIONS = 2; // unanimous observations needed to skip scanning a neighbour
     private Robot robot;
-    private boolean suppressed;
+    private final CancelToken suppression = new CancelToken(); // cancelled by suppress()
     
     /**
      * Constructor of the behaviour "Scan"
      * @param robot
      */
     public Scan(Robot robot) {
-        this.robot = robot;
+        this(robot, DEFAULT_DISTANCE_LIMIT);
+    }
+    
+    /**
+     * Constructor of the behaviour "Scan"
+     * @param robot
+     * @param distanceLimit readings up to this distance (m) are a block on the neighbour cell
+     */
+    public Scan(Robot robot, float distanceLimit) {
+        this.robot          = robot;
+        this.DISTANCE_LIMIT = distanceLimit;
     }
     
     /**
@@ -44,7 +59,7 @@ public class Scan implements Behavior {
      * 
      */
     private float scanNeighbours(OccupancyGrid grid, OccupancyGrid.GridCell targetCell) {
-        EV3MediumRegulatedMotor motor = robot.getUSMotor();
+        Motor motor = robot.getUSMotor();
                 
         float map_ang = grid.getAngleToCell(robot.getCurrentCell(), targetCell);
         float rot_ang = map_ang - robot.getAngle();
@@ -58,33 +73,64 @@ public class Scan implements Behavior {
         log("USRotation Angle: -" + rot_ang);
         motor.rotate((int)-rot_ang, true); // because +90 is to the left on motorC 
         
-        while(motor.isMoving() && !suppressed)
-            Thread.yield();
+        motor.waitComplete(suppression);
         
         try {
-            Thread.sleep(200);
+            robot.getClock().sleep(200);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
         
-        float dis = robot.getDistance();
+        float dis = robot.getDistance(robot.DISTANCE_WINDOW);
         log("Reseting pos: " + rot_ang);
         motor.rotate((int)rot_ang, true); // rest motor C to center
         
-        while(motor.isMoving() && !suppressed)
-            Thread.yield();
+        motor.waitComplete(suppression);
         
         return dis;
     }
 
+    /**
+     * Updates the grid with a distance reading taken from the current cell.
+     * The reading is cast as a ray: every cell in front of the obstacle becomes free, 
+     * the cell of the obstacle occupied and whatever is behind it stays unknown.
+     * @param grid
+     * @param currentCell
+     * @param map_ang
+     * @param scan_dis
+     * @return if the reading found a block on the neighbour cell
+     */
+    private boolean updateGrid(OccupancyGrid grid, OccupancyGrid.GridCell currentCell, float map_ang, float scan_dis) {
+        boolean hit   = scan_dis < MAX_RANGE;
+        float dis     = Math.min(scan_dis, MAX_RANGE);
+        // an obstacle k cells ahead reads about (k - 0.5) cells away, so the borders between the cells it can
+        // be in are halfway between those readings (noise of either sign doesn't move it a cell)
+        int freeCells = dis <= DISTANCE_LIMIT ? 0 : (int) ((hit ? dis : dis - CELL_SIZE / 2) / CELL_SIZE);
+        
+        // a hit ends in the middle of the obstacle cell, a miss on the border of the last free cell
+        int updated = grid.castRay(currentCell, map_ang, hit ? freeCells + 1 : freeCells + 0.5f, hit);
+        log("Ray cast: " + freeCells + " free cell(s), hit: " + hit + ", updated: " + updated);
+        
+        return hit && freeCells == 0;
+    }
+
+    /**
+     * A cell is known well enough to skip scanning it once it has enough observations and all of them agree.
+     * @param cell
+     * @return
+     */
+    private boolean isConfident(OccupancyGrid.GridCell cell) {
+        return cell.getC() >= CONFIDENT_OBSERVATIONS && Math.abs(cell.getM()) == cell.getC();
+    }
+    
     @Override
     /**
      * Action method for scan.
      * Robot scans neighbouring cells using the ultra-sound and calculates if there may
-     * be a block on one of the neighbour cells.
+     * be a block on one of the neighbour cells (and further down the corridor).
      */
     public void action() {
-        suppressed = false;
+        suppression.reset();
          
         // Get gird instance, and current cell.
         OccupancyGrid.GridCell currentCell = robot.getCurrentCell();
@@ -94,28 +140,42 @@ public class Scan implements Behavior {
         ArrayList<OccupancyGrid.GridCell> currentCellNeighbours = grid.getScanNeighbours(currentCell);
         
         for( OccupancyGrid.GridCell scanningCell : currentCellNeighbours ) {
+            // rays cast from other cells already agree on it (a reading contradicting them breaks the
+            // agreement, so the cell is scanned again then)
+            if ( isConfident(scanningCell) ) {
+                robot.getServerSocket().sendString("===> Skipping Cell (already known): " + scanningCell.x + ", " + scanningCell.y);
+                continue;
+            }
+            
             robot.getServerSocket().sendString("===> Scanning Cell: " + scanningCell.x + ", " + scanningCell.y);
             
             try { // Scan and update grid
                 float scan_dis = scanNeighbours(grid, scanningCell);
+                float map_ang  = grid.getAngleToCell(currentCell, scanningCell);
                 robot.getServerSocket().sendString("Scanned Distance:" + scan_dis);
                 
-                if ( scan_dis <= DISTANCE_LIMIT ) {
-                    scanningCell.occupied();
-                    Sound.twoBeeps();
+                if ( Float.isNaN(scan_dis) ) { // no reading, don't take it for a miss
+                    robot.getServerSocket().sendString("No distance reading, cell left as it was");
+                    continue;
+                }
+                
+                if ( updateGrid(grid, currentCell, map_ang, scan_dis) ) {
+                    robot.getHardware().getSpeaker().twoBeeps();
                     robot.getServerSocket().sendString("Cell Occupied!");
                 }else {
-                    scanningCell.unoccupied();
                     robot.getServerSocket().sendString("Cell Unoccupied!");
                 }
                 
-                Thread.sleep(500);
+                robot.getClock().sleep(500);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
         }
         
-        if ( robot.getPreviousCell() != null && currentCell != robot.getPreviousCell() )
+        // let the reader threads (monitor, server) see the new map
+        grid.publishSnapshot();
+        
+        if ( robot.getPreviousCell() != null && !currentCell.equals(robot.getPreviousCell()) )
             robot.setNeedingGyroReset(true);
         
         robot.setScanning(false); // scan is over (only need to scan once per visit)
@@ -126,7 +186,7 @@ public class Scan implements Behavior {
      */
     @Override
     public void suppress() {
-        suppressed = true;
+        suppression.cancel();
     }
 
 }
\ No newline at end of file
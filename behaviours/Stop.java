@@ -1,7 +1,5 @@
 package behaviours;
 import core.Robot;
-import lejos.hardware.Button;
-import lejos.hardware.Sound;
 import lejos.robotics.subsumption.Behavior;
 
 public class Stop implements Behavior {
@@ -30,7 +28,7 @@ public class Stop implements Behavior {
      */
     @Override
     public boolean takeControl() {
-        return Button.ESCAPE.isDown() || robot.isLapCompleted();
+        return robot.getHardware().getButtons().isEscapeDown() || robot.isLapCompleted();
     }
 
     /**
@@ -40,22 +38,29 @@ public class Stop implements Behavior {
      */
     @Override
     public void action() {
-        Sound.beepSequence();
+        robot.getHardware().getSpeaker().beepSequence();
         robot.getPilot().stop();
         
         if ( !robot.isLapCompleted() ){
             robot.getServerSocket().sendMapState();
             robot.getServerSocket().close();
             robot.closeRobot();
-            System.exit(1);
+            robot.getHardware().exit(1);
             return;
         }
         
         String s1 = "############## LAP COMPLETED ##############";
+        long cpu  = robot.getCpuTime(); // -1 if unknown
         String s2 = "ELAPSED TIME: " + robot.getElapsedTime() + "ms";
+        String s3 = "CPU TIME: " + cpu + "ms";
+        
+        // a share of the lap only makes sense in real time (not on a simulated or sped up clock)
+        if ( cpu >= 0 && robot.getClock().isWallClock() )
+            s3 += " (" + (100 * cpu / Math.max(1, robot.getElapsedTime())) + "% of the lap)";
         
         log(s1);
         log(s2);
+        log(s3);
         
         robot.getServerSocket().sendMapState();
         robot.getServerSocket().sendStateObject();
@@ -63,11 +68,11 @@ public class Stop implements Behavior {
         robot.getMonitor().print("== LAP COMPLETED ==");
         robot.getMonitor().print(s2);
         
-        Button.waitForAnyPress();
+        robot.getHardware().getButtons().waitForAnyPress();
         robot.getServerSocket().close();
         robot.closeRobot();
         
-        System.exit(1);
+        robot.getHardware().exit(1); // (only stops the robot when simulated)
     }
     
     @Override
@@ -0,0 +1,97 @@
+package benchmarks;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import libs.ConcurrentOccupancyGrid;
+import libs.LogOddsOccupancyModel;
+import libs.OccupancyGrid;
+
+/**
+ * Benchmark of concurrent map updates: several writer threads feeding observations into one shared grid.
+ * Compares a normal grid guarded by a single global lock against the striped ConcurrentOccupancyGrid.
+ * Run it as a normal java program (no brick needed).
+ */
+public class ContentionBenchmark {
+    private static final int SIZE               = 64;       // 64x64 arena
+    private static final int UPDATES_PER_THREAD = 500000;
+    private static final int RUNS               = 5;
+    private static final int[] THREADS          = { 1, 2, 4, 8 };
+    
+    /**
+     * Wrap function for print.
+     * @param txt
+     */
+    public static void print( String txt ) {
+        System.out.println("[BENCHMARK] " + txt);
+    }
+    
+    /**
+     * Runs the writers and returns the elapsed time in ns.
+     * @param grid
+     * @param threads
+     * @param globalLock if every update should be done under one lock on the grid
+     * @return
+     */
+    private static long run( final OccupancyGrid grid, int threads, final boolean globalLock ) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done  = new CountDownLatch(threads);
+        
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            new Thread() {
+                public void run() {
+                    Random rnd = new Random(seed);
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        OccupancyGrid.GridCell cell = grid.getCell(rnd.nextInt(SIZE), rnd.nextInt(SIZE));
+                        boolean occupied = rnd.nextInt(8) == 0;
+                        
+                        if ( globalLock ) {
+                            synchronized (grid) {
+                                if ( occupied ) cell.occupied(); else cell.unoccupied();
+                            }
+                        } else {
+                            if ( occupied ) cell.occupied(); else cell.unoccupied();
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        
+        long t0 = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - t0;
+    }
+    
+    private static void bench( String name, boolean striped, int threads ) throws InterruptedException {
+        long best = Long.MAX_VALUE;
+        
+        for (int r = 0; r < RUNS; r++) {
+            OccupancyGrid grid = striped 
+                    ? new ConcurrentOccupancyGrid(SIZE, SIZE, new LogOddsOccupancyModel(), ConcurrentOccupancyGrid.DEFAULT_STRIPES)
+                    : new OccupancyGrid(SIZE, SIZE, new LogOddsOccupancyModel());
+            
+            best = Math.min(best, run(grid, threads, !striped));
+        }
+        
+        double opsPerMs = (double) threads * UPDATES_PER_THREAD / (best / 1e6);
+        print(String.format("%-12s %d thread(s): %10.0f updates/ms", name, threads, opsPerMs));
+    }
+    
+    public static void main( String[] args ) throws InterruptedException {
+        print("Grid " + SIZE + "x" + SIZE + ", " + UPDATES_PER_THREAD + " updates per thread, best of " + RUNS + " runs, " 
+                + Runtime.getRuntime().availableProcessors() + " cores");
+        
+        for (int threads : THREADS) {
+            bench("global lock", false, threads);
+            bench("striped", true, threads);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package benchmarks;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import core.Core;
+import core.Monitor;
+import core.Robot;
+import core.SensorSampler;
+import hardware.SimulatedArena;
+import hardware.SimulatedHardware;
+import hardware.SystemClock;
+import lejos.robotics.subsumption.Behavior;
+import network.Server;
+
+/**
+ * Measures the CPU time the behaviours use during a lap, as a share of the (real) time the lap takes.
+ * The robot is a SimulatedHardware running in real time (sped up SPEED times) with the sensor sampler on its
+ * own thread, and the behaviours run like under the leJOS Arbitrator: one thread runs the action of the highest
+ * behaviour wanting control while another one polls the higher behaviours and suppresses the running one.
+ * Only the CPU time of the behaviour thread is counted (ThreadMXBean), the polling thread stands in for the
+ * Arbitrator's own one.
+ * Run it as a normal java program (no brick needed), the arguments are the number of laps and the speed.
+ */
+public class CpuBenchmark {
+    private static final int LAPS        = 5;     // random arenas (default)
+    private static final double SPEED    = 10;    // times faster than real time (default)
+    private static final int WIDTH       = 6;     // cells, the size of the robot's map
+    private static final int HEIGHT      = 7;
+    private static final float CELL_SIZE = 25;    // cm
+    private static final float BLOCKS    = 0.15f; // share of blocked cells
+    private static final long TIME_LIMIT = 30 * 60 * 1000; // ms of clock time before a lap counts as failed
+    private static final long POLL       = 1;     // ms between two checks of the higher behaviours
+
+    /**
+     * Wrap function for print.
+     * @param txt
+     */
+    public static void print( String txt ) {
+        System.out.println("[BENCHMARK] " + txt);
+    }
+
+    /**
+     * Result of one lap.
+     */
+    private static class Lap {
+        volatile Robot robot;
+        volatile int active = -1;   // index of the behaviour running its action
+        volatile boolean timedOut;
+        long cpu;                   // ns, of the behaviour thread
+        long wall;                  // ns
+        long lapTime;               // ms of clock time
+        boolean completed;
+    }
+
+    /**
+     * Runs a lap on a random arena.
+     */
+    private static Lap lap( long seed, double speed ) throws InterruptedException {
+        final SimulatedHardware hardware = new SimulatedHardware(SimulatedArena.random(WIDTH, HEIGHT, CELL_SIZE, BLOCKS, seed), seed, new SystemClock(speed));
+        final Behavior[][] behaviours    = new Behavior[1][];
+        final ThreadMXBean threads       = ManagementFactory.getThreadMXBean();
+        final Lap lap                    = new Lap();
+
+        // the robot is made on the behaviour thread (like Core.main, which then runs the Arbitrator)
+        Thread behaviourThread = new Thread() {
+            public void run() {
+                Robot robot = new Robot(hardware);
+                robot.installMonitor(new Monitor(robot, Core.MONITOR_DELAY));
+                robot.installServer(Server.offline(robot));
+
+                SensorSampler sampler = new SensorSampler(hardware);
+                robot.installSampler(sampler);
+                sampler.start();
+
+                behaviours[0] = Core.createBehaviours(robot, false);
+                lap.robot     = robot;
+
+                long start = threads.getCurrentThreadCpuTime();
+                try {
+                    while (!lap.timedOut) {
+                        int next = highestWantingControl(behaviours[0], -1);
+                        if ( next < 0 ) {
+                            Thread.yield();
+                            continue;
+                        }
+
+                        lap.active = next;
+                        behaviours[0][next].action();
+                        lap.active = -1;
+                    }
+                } catch (SimulatedHardware.ExitException e) {
+                    lap.completed = robot.isLapCompleted();
+                } finally {
+                    lap.cpu     = threads.getCurrentThreadCpuTime() - start;
+                    lap.lapTime = robot.getElapsedTime();
+                    sampler.shutdown();
+                }
+            }
+        };
+
+        long start = System.nanoTime();
+        behaviourThread.start();
+
+        while (behaviourThread.isAlive()) {
+            Robot robot = lap.robot;
+            int active  = lap.active;
+
+            if ( active >= 0 && highestWantingControl(behaviours[0], active) > active )
+                behaviours[0][active].suppress();
+
+            if ( robot != null && robot.getElapsedTime() > TIME_LIMIT )
+                lap.timedOut = true;
+
+            Thread.sleep(POLL);
+        }
+
+        lap.wall = System.nanoTime() - start;
+        return lap;
+    }
+
+    /**
+     * Returns the highest behaviour wanting control (above a given one), -1 if none.
+     */
+    private static int highestWantingControl( Behavior[] behaviours, int above ) {
+        for (int i = behaviours.length - 1; i > above; i--)
+            if ( behaviours[i].takeControl() )
+                return i;
+
+        return -1;
+    }
+
+    public static void main( String[] args ) throws InterruptedException {
+        int laps     = args.length > 0 ? Integer.parseInt(args[0]) : LAPS;
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : SPEED;
+
+        if ( !ManagementFactory.getThreadMXBean().isThreadCpuTimeSupported() ) {
+            print("This JVM can't measure the CPU time of a thread");
+            return;
+        }
+
+        long cpu = 0, wall = 0;
+        int completed = 0;
+
+        for (int a = 0; a < laps; a++) {
+            Lap lap = lap(a, speed);
+
+            // a lap that fails can end up re-running a behaviour that never waits, it says nothing about the waits
+            if ( lap.completed ) {
+                cpu       += lap.cpu;
+                wall      += lap.wall;
+                completed += 1;
+            }
+
+            print(String.format("arena %d: %s, %.1f s lap (%.2f s real), behaviour thread %.1f ms CPU = %.2f%%", a,
+                    lap.completed ? "completed" : lap.timedOut ? "timed out" : "stopped", lap.lapTime / 1000.0,
+                    lap.wall / 1e9, lap.cpu / 1e6, 100.0 * lap.cpu / lap.wall));
+        }
+
+        print(String.format("%d/%d laps completed at %.0fx speed: behaviour thread %.1f ms CPU in %.2f s real = %.2f%% of a core",
+                completed, laps, speed, cpu / 1e6, wall / 1e9, 100.0 * cpu / Math.max(1, wall)));
+    }
+}
@@ -0,0 +1,187 @@
+package benchmarks;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import libs.DistanceTable;
+import libs.OccupancyGrid;
+import libs.RotationPlanner;
+import libs.TourPlanner;
+import libs.WaypointResolver;
+
+/**
+ * Simulates laps of the exploration (scan, pick the next cell, drive there) on random arenas and compares
+ * the greedy policy of Drive against following a planned tour of the frontier (Drive with tour = true):
+ * cells travelled, rotations and predicted drive time per lap.
+ * Scans cast rays into the unvisited neighbours like the Scan behaviour, paths are driven like Drive does
+ * (quickest path to the chosen cell, turns included).
+ * Run it as a normal java program (no brick needed).
+ */
+public class ExplorationBenchmark {
+    private static final int[][] SIZES  = {{6, 7}, {12, 12}, {20, 20}};
+    private static final int ARENAS     = 20;    // random arenas per size
+    private static final float BLOCKS   = 0.15f; // share of blocked cells
+    private static final int RANGE      = 3;     // sensor range (cells)
+
+    private static final double CELL_DISTANCE = 25;  // cm
+    private static final double LINEAR_SPEED  = 15;  // cm/s
+    private static final double ANGULAR_SPEED = 90;  // degrees/s
+    private static final double STOP_TIME     = 0.3; // s
+
+    private static final int[] DIR_X = {0, 1, 0, -1}; // RotationPlanner headings
+    private static final int[] DIR_Y = {1, 0, -1, 0};
+
+    /**
+     * Wrap function for print.
+     * @param txt
+     */
+    public static void print( String txt ) {
+        System.out.println("[BENCHMARK] " + txt);
+    }
+
+    /**
+     * Result of one lap.
+     */
+    private static class Lap {
+        int cells;
+        int rotations;
+        int visited;
+        double time;
+    }
+
+    /**
+     * Random blocked cells (repeatable for a seed), the start cell (0,0) is always free.
+     */
+    private static boolean[] arena( int w, int h, long seed ) {
+        Random rnd        = new Random(seed);
+        boolean[] blocked = new boolean[w * h];
+
+        for (int i = 1; i < blocked.length; i++)
+            blocked[i] = rnd.nextFloat() < BLOCKS;
+
+        return blocked;
+    }
+
+    /**
+     * Scans the unvisited neighbours of a cell: one ray each, ending on the first block, the border of the
+     * arena or the sensor range.
+     */
+    private static void scan( OccupancyGrid grid, boolean[] blocked, OccupancyGrid.GridCell cell ) {
+        for (OccupancyGrid.GridCell neighbour : grid.getScanNeighbours(cell)) {
+            int dx = neighbour.x - cell.x, dy = neighbour.y - cell.y;
+            int free = 0;
+
+            while (free < RANGE) {
+                int x = cell.x + (free + 1) * dx, y = cell.y + (free + 1) * dy;
+                if ( !grid.contains(x, y) || blocked[x * grid.HEIGHT + y] )
+                    break;
+                free++;
+            }
+
+            int x = cell.x + (free + 1) * dx, y = cell.y + (free + 1) * dy;
+            boolean hit = free < RANGE && grid.contains(x, y);
+
+            grid.castRay(cell, grid.getAngleToCell(cell, neighbour), hit ? free + 1 : free + 0.5f, hit);
+        }
+    }
+
+    /**
+     * Runs a lap from (0,0) facing up, with the greedy or the tour policy.
+     */
+    private static Lap lap( boolean[] blocked, int w, int h, boolean tour ) {
+        OccupancyGrid grid          = new OccupancyGrid(w, h);
+        OccupancyGrid.GridCell cell = grid.getCell(0, 0);
+        cell.setVisited(true);
+        cell.unoccupied();
+
+        WaypointResolver resolver = new WaypointResolver(grid, w * h <= DistanceTable.MAX_CELLS);
+        RotationPlanner rotations = RotationPlanner.fromSpeeds(resolver, CELL_DISTANCE, LINEAR_SPEED, ANGULAR_SPEED, STOP_TIME);
+        TourPlanner planner       = new TourPlanner(resolver);
+
+        Lap lap     = new Lap();
+        int heading = RotationPlanner.HEADING_UP;
+
+        while (true) {
+            scan(grid, blocked, cell);
+
+            List<WaypointResolver.Node> path = null;
+            OccupancyGrid.GridCell goal = null;
+            ArrayList<OccupancyGrid.GridCell> neighbours = grid.getFreeUnvisitedNeighbours(cell);
+
+            if ( !tour && !neighbours.isEmpty() ) {
+                goal = neighbours.get(0);
+                path = new ArrayList<WaypointResolver.Node>();
+                path.add(resolver.getMap()[goal.x * h + goal.y]);
+            } else {
+                resolver.refresh();
+
+                if ( tour ) {
+                    planner.refresh(cell);
+                    goal = planner.next();
+                    if ( goal != null )
+                        path = resolver.calculatePath(cell, goal);
+                } else {
+                    path = resolver.calculatePathToFrontier(cell);
+                    if ( path != null && !path.isEmpty() )
+                        goal = path.get(path.size() - 1).getCell();
+                }
+
+                if ( path == null || path.isEmpty() )
+                    break;
+
+                List<WaypointResolver.Node> quickest = rotations.calculatePath(cell, heading, goal);
+                if ( quickest != null )
+                    path = quickest;
+            }
+
+            lap.time += rotations.predictTime(cell, heading, path);
+
+            for (WaypointResolver.Node node : path) {
+                OccupancyGrid.GridCell next = node.getCell();
+
+                int d = 0;
+                while (DIR_X[d] != next.x - cell.x || DIR_Y[d] != next.y - cell.y)
+                    d++;
+
+                if ( d != heading )
+                    lap.rotations += 1;
+
+                heading    = d;
+                cell       = next;
+                lap.cells += 1;
+                cell.setVisited(true);
+            }
+        }
+
+        lap.visited = grid.getNumVisits();
+        return lap;
+    }
+
+    public static void main( String[] args ) {
+        for (int[] size : SIZES) {
+            int w = size[0], h = size[1];
+            Lap greedy = new Lap(), planned = new Lap();
+
+            for (int a = 0; a < ARENAS; a++) {
+                boolean[] blocked = arena(w, h, a);
+
+                for (int p = 0; p < 2; p++) {
+                    Lap lap   = lap(blocked, w, h, p == 1);
+                    Lap total = p == 1 ? planned : greedy;
+
+                    total.cells     += lap.cells;
+                    total.rotations += lap.rotations;
+                    total.visited   += lap.visited;
+                    total.time      += lap.time;
+                }
+            }
+
+            print("Arena " + w + "x" + h + ", " + ARENAS + " random arenas, averages per lap");
+            for (int p = 0; p < 2; p++) {
+                Lap total = p == 1 ? planned : greedy;
+                print(String.format("  %-6s %7.1f cells travelled %7.1f rotations %8.1f s predicted (%.1f cells visited)", p == 1 ? "tour" : "greedy",
+                        (double) total.cells / ARENAS, (double) total.rotations / ARENAS, total.time / ARENAS, (double) total.visited / ARENAS));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package benchmarks;
+import java.util.ArrayList;
+import java.util.Random;
+
+import libs.BitboardOccupancyGrid;
+import libs.OccupancyGrid;
+
+/**
+ * Micro benchmark of the neighbour/frontier queries used by the behaviours,
+ * comparing the array backed grid against the bitboard grid on the 7x6 arena.
+ * Run it as a normal java program (no brick needed).
+ */
+public class GridBenchmark {
+    private static final int WIDTH      = 6;
+    private static final int HEIGHT     = 7;
+    private static final int ITERATIONS = 2000000;
+    private static final int RUNS       = 5;
+    
+    /**
+     * Wrap function for print.
+     * @param txt
+     */
+    public static void print( String txt ) {
+        System.out.println("[BENCHMARK] " + txt);
+    }
+    
+    /**
+     * Fills a grid with a random (but repeatable) half explored arena.
+     * @param grid
+     * @param seed
+     * @return
+     */
+    private static OccupancyGrid fill( OccupancyGrid grid, long seed ) {
+        Random rnd = new Random(seed);
+        
+        for (int x = 0; x < grid.WIDTH; x++) {
+            for (int y = 0; y < grid.HEIGHT; y++) {
+                if ( rnd.nextFloat() < 0.7f ) {
+                    if ( rnd.nextFloat() < 0.15f )
+                        grid.getCell(x, y).occupied();
+                    else
+                        grid.getCell(x, y).unoccupied();
+                    
+                    grid.getCell(x, y).setVisited(rnd.nextBoolean());
+                }
+            }
+        }
+        
+        return grid;
+    }
+    
+    /**
+     * The current list based path (as used by Drive).
+     */
+    private static long listQueries( OccupancyGrid grid ) {
+        long sink = 0;
+        
+        for (int i = 0; i < ITERATIONS; i++) {
+            OccupancyGrid.GridCell cell = grid.getCell(i % WIDTH, i % HEIGHT);
+            ArrayList<OccupancyGrid.GridCell> neighbours = grid.getFreeUnvisitedNeighbours(cell);
+            
+            sink += neighbours.size();
+            if ( neighbours.isEmpty() )
+                sink += grid.calculateScannedUnvisited().size();
+        }
+        
+        return sink;
+    }
+    
+    /**
+     * The allocation free path (masks and frontier counts).
+     */
+    private static long maskQueries( OccupancyGrid grid ) {
+        long sink = 0;
+        
+        for (int i = 0; i < ITERATIONS; i++) {
+            int mask = grid.getNeighbourMask(i % WIDTH, i % HEIGHT, OccupancyGrid.NEIGHBOUR_FREE_UNVISITED);
+            
+            sink += Integer.bitCount(mask);
+            if ( mask == 0 )
+                sink += grid.getFrontierSize();
+        }
+        
+        return sink;
+    }
+    
+    private static void run( String name, OccupancyGrid grid, boolean masks ) {
+        long best = Long.MAX_VALUE;
+        long sink = 0;
+        
+        for (int r = 0; r < RUNS; r++) {
+            long start = System.nanoTime();
+            sink += masks ? maskQueries(grid) : listQueries(grid);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        
+        print(String.format("%-32s %8.1f ns/query (checksum %d)", name, (double) best / ITERATIONS, sink));
+    }
+    
+    public static void main( String[] args ) {
+        OccupancyGrid array    = fill(new OccupancyGrid(WIDTH, HEIGHT), 16);
+        OccupancyGrid bitboard = fill(new BitboardOccupancyGrid(WIDTH, HEIGHT), 16);
+        
+        print("Grid " + WIDTH + "x" + HEIGHT + ", frontier size " + array.getFrontierSize() + ", best of " + RUNS + " runs");
+        run("array    (lists)", array, false);
+        run("bitboard (lists)", bitboard, false);
+        run("array    (masks)", array, true);
+        run("bitboard (masks)", bitboard, true);
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+import core.Core;
+import core.Simulator;
+import hardware.SimulatedArena;
+
+/**
+ * Runs whole laps of the real behaviours (Drive, GyroReset, Scan, Collision, Stop) on random arenas with the
+ * discrete-event Simulator: simulated lap time, cells moved, rotations and collisions per lap, for the greedy
+ * policy of Drive and for following a planned tour. Laps take simulated time only, so thousands of arenas
+ * run in seconds.
+ * Run it as a normal java program (no brick needed), the first argument is the number of arenas.
+ */
+public class LapBenchmark {
+    private static final int ARENAS      = 500;   // random arenas (default)
+    private static final int WIDTH       = 6;     // cells, the size of the robot's map
+    private static final int HEIGHT      = 7;
+    private static final float CELL_SIZE = 25;    // cm
+    private static final float BLOCKS    = 0.15f; // share of blocked cells
+
+    /**
+     * Wrap function for print.
+     * @param txt
+     */
+    public static void print( String txt ) {
+        System.out.println("[BENCHMARK] " + txt);
+    }
+
+    /**
+     * Totals over the laps of one policy.
+     */
+    private static class Totals {
+        int laps, completed, cells, rotations, collisions, mapErrors;
+        long lapTime; // ms, completed laps
+        long wall;    // ns
+    }
+
+    public static void main( String[] args ) {
+        int arenas = args.length > 0 ? Integer.parseInt(args[0]) : ARENAS;
+
+        for (int p = 0; p < 2; p++) {
+            Totals t = new Totals();
+
+            for (int a = 0; a < arenas; a++) {
+                Simulator sim = new Simulator(SimulatedArena.random(WIDTH, HEIGHT, CELL_SIZE, BLOCKS, a), a);
+                sim.setBehaviours(Core.createBehaviours(sim.getRobot(), p == 1));
+
+                long start         = System.nanoTime();
+                Simulator.Result r = sim.run();
+                t.wall            += System.nanoTime() - start;
+
+                t.laps       += 1;
+                t.cells      += r.cellsMoved;
+                t.rotations  += r.rotations;
+                t.collisions += r.collisions;
+                t.mapErrors  += r.mapErrors;
+
+                if ( r.isCompleted() ) {
+                    t.completed += 1;
+                    t.lapTime   += r.lapTime;
+                }
+            }
+
+            print((p == 1 ? "tour" : "greedy") + ", " + arenas + " random " + WIDTH + "x" + HEIGHT + " arenas");
+            print(String.format("  completed %d/%d, %.1f s simulated per completed lap", t.completed, t.laps,
+                    t.completed == 0 ? 0 : t.lapTime / 1000.0 / t.completed));
+            print(String.format("  per lap: %.1f cells moved, %.1f rotations, %.1f collisions, %.2f map errors",
+                    (double) t.cells / t.laps, (double) t.rotations / t.laps, (double) t.collisions / t.laps,
+                    (double) t.mapErrors / t.laps));
+            print(String.format("  %.2f ms wall time per lap", t.wall / 1e6 / t.laps));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package benchmarks;
+import java.util.List;
+import java.util.Random;
+
+import libs.HierarchicalPlanner;
+import libs.OccupancyGrid;
+import libs.WaypointResolver;
+
+/**
+ * Compares plain A* against jump point search (WaypointResolver.calculatePath) and the hierarchical planner 
+ * on big simulated arenas: nodes expanded and time per query, for the same random start/goal pairs.
+ * For the hierarchical planner it also times the refresh after a single cell changes.
+ * Run it as a normal java program (no brick needed).
+ */
+public class PathBenchmark {
+    private static final int[] SIZES   = {32, 64, 128, 256};
+    private static final int QUERIES   = 200;
+    private static final int RUNS      = 5;
+    private static final float WALLS   = 0.10f; // share of the arena covered by wall segments
+    private static final int CLUSTER   = 10;    // cluster size of the hierarchical planner
+    
+    /**
+     * Wrap function for print.
+     * @param txt
+     */
+    public static void print( String txt ) {
+        System.out.println("[BENCHMARK] " + txt);
+    }
+    
+    /**
+     * Builds a fully scanned arena with random straight wall segments (repeatable for a seed).
+     * @param size
+     * @param seed
+     * @return
+     */
+    private static OccupancyGrid arena( int size, long seed ) {
+        Random rnd         = new Random(seed);
+        boolean[] blocked  = new boolean[size * size];
+        int target         = (int) (size * size * WALLS);
+        
+        for (int placed = 0; placed < target; ) {
+            int x = rnd.nextInt(size), y = rnd.nextInt(size);
+            int length = 2 + rnd.nextInt(size / 4);
+            boolean horizontal = rnd.nextBoolean();
+            
+            for (int k = 0; k < length && x < size && y < size; k++) {
+                if ( !blocked[x * size + y] ) {
+                    blocked[x * size + y] = true;
+                    placed++;
+                }
+                
+                if ( horizontal ) x++; else y++;
+            }
+        }
+        
+        OccupancyGrid grid = new OccupancyGrid(size, size);
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if ( blocked[x * size + y] )
+                    grid.getCell(x, y).occupied();
+                else
+                    grid.getCell(x, y).unoccupied();
+            }
+        }
+        
+        return grid;
+    }
+    
+    private static void run( String name, OccupancyGrid grid, WaypointResolver resolver, int[] queries, int algorithm ) {
+        long best     = Long.MAX_VALUE;
+        long expanded = 0;
+        long length   = 0;
+        
+        for (int r = 0; r < RUNS; r++) {
+            expanded = 0;
+            length   = 0;
+            
+            long start = System.nanoTime();
+            for (int q = 0; q < queries.length; q += 4) {
+                List<WaypointResolver.Node> path = resolver.calculatePath(grid.getCell(queries[q], queries[q + 1]), grid.getCell(queries[q + 2], queries[q + 3]), algorithm);
+                
+                expanded += resolver.getLastPathExpanded();
+                length   += path == null ? 0 : path.size();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        
+        int n = queries.length / 4;
+        print(String.format("  %-4s %10.1f nodes expanded/query %10.1f us/query (total path length %d)", name, (double) expanded / n, best / 1000.0 / n, length));
+    }
+    
+    private static void runHierarchical( OccupancyGrid grid, HierarchicalPlanner planner, int[] queries ) {
+        long best     = Long.MAX_VALUE;
+        long expanded = 0;
+        long length   = 0;
+        
+        for (int r = 0; r < RUNS; r++) {
+            expanded = 0;
+            length   = 0;
+            
+            long start = System.nanoTime();
+            for (int q = 0; q < queries.length; q += 4) {
+                List<WaypointResolver.Node> path = planner.calculatePath(grid.getCell(queries[q], queries[q + 1]), grid.getCell(queries[q + 2], queries[q + 3]));
+                
+                expanded += planner.getLastExpanded();
+                length   += path == null ? 0 : path.size();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        
+        int n = queries.length / 4;
+        print(String.format("  %-4s %10.1f nodes expanded/query %10.1f us/query (total path length %d)", "HPA", (double) expanded / n, best / 1000.0 / n, length));
+        
+        // one new (contradicting) observation at a time, against building the planner from scratch
+        Random rnd   = new Random(7);
+        int changes  = 200;
+        long refresh = System.nanoTime();
+        for (int i = 0; i < changes; i++) {
+            OccupancyGrid.GridCell cell = grid.getCell(rnd.nextInt(grid.WIDTH), rnd.nextInt(grid.HEIGHT));
+            
+            if ( cell.getP() < OccupancyGrid.FREE_CELL_DETERMINANT )
+                cell.occupied();
+            else
+                cell.unoccupied();
+            
+            planner.refresh();
+        }
+        refresh = System.nanoTime() - refresh;
+        
+        long build = System.nanoTime();
+        new HierarchicalPlanner(new WaypointResolver(grid), CLUSTER);
+        build = System.nanoTime() - build;
+        
+        print(String.format("  HPA refresh after one observation %.1f us, building from scratch %.1f us", refresh / 1000.0 / changes, build / 1000.0));
+    }
+    
+    public static void main( String[] args ) {
+        for (int size : SIZES) {
+            OccupancyGrid grid        = arena(size, size);
+            WaypointResolver resolver = new WaypointResolver(grid);
+            
+            Random rnd    = new Random(42);
+            int[] queries = new int[QUERIES * 4];
+            for (int q = 0; q < queries.length; q += 4) {
+                do {
+                    queries[q]     = rnd.nextInt(size);
+                    queries[q + 1] = rnd.nextInt(size);
+                } while (grid.getCell(queries[q], queries[q + 1]).getP() >= OccupancyGrid.FREE_CELL_DETERMINANT);
+                do {
+                    queries[q + 2] = rnd.nextInt(size);
+                    queries[q + 3] = rnd.nextInt(size);
+                } while (grid.getCell(queries[q + 2], queries[q + 3]).getP() >= OccupancyGrid.FREE_CELL_DETERMINANT);
+            }
+            
+            print("Arena " + size + "x" + size + ", " + QUERIES + " queries, best of " + RUNS + " runs");
+            run("A*",  grid, resolver, queries, WaypointResolver.SEARCH_ASTAR);
+            run("JPS", grid, resolver, queries, WaypointResolver.SEARCH_JPS);
+            runHierarchical(grid, new HierarchicalPlanner(resolver, CLUSTER), queries);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package core;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import hardware.SimulatedArena;
+
+/**
+ * Runs simulated laps (see Simulator) for a set of parameter configurations over the same random arenas,
+ * in parallel on a ForkJoinPool, and sums them up per configuration: lap time percentiles, path lengths
+ * and failure rates, written out as CSV or JSON.
+ * Every lap has its own arena, hardware, clock, robot, grid and behaviours, nothing is shared between them,
+ * so the laps scale with the cores. Arena i (and its noise) uses seed i, the results don't depend on the
+ * number of threads.
+ * Run it as a normal java program: BatchRunner [arenas] [output prefix] [threads]
+ */
+public class BatchRunner {
+    public static final int WIDTH       = 6;     // cells, the size of the robot's map
+    public static final int HEIGHT      = 7;
+    public static final float CELL_SIZE = 25;    // cm
+    public static final float BLOCKS    = 0.15f; // share of blocked cells
+    public static final int SPLIT       = 4;     // laps run by one task without splitting it further
+
+    private final ForkJoinPool pool;
+    private final int arenas;
+    private long timeLimit = Simulator.DEFAULT_TIME_LIMIT;
+
+    /**
+     * Parameters of a lap.
+     */
+    public static class Config {
+        public final float distanceLimit;        // m, Scan
+        public final double freeCellDeterminant; // occupancy grid
+        public final double linearSpeed;         // cm/s
+        public final double angularSpeed;        // degrees/s
+        public final boolean tour;               // Drive policy
+
+        public Config( float distanceLimit, double freeCellDeterminant, double linearSpeed, double angularSpeed, boolean tour ) {
+            this.distanceLimit       = distanceLimit;
+            this.freeCellDeterminant = freeCellDeterminant;
+            this.linearSpeed         = linearSpeed;
+            this.angularSpeed        = angularSpeed;
+            this.tour                = tour;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "limit %.3f, determinant %.2f, speeds %.0f/%.0f, %s",
+                    distanceLimit, freeCellDeterminant, linearSpeed, angularSpeed, tour ? "tour" : "greedy");
+        }
+    }
+
+    /**
+     * Results of all laps of a configuration.
+     */
+    public static class Summary {
+        public final Config config;
+        public final int runs;
+        public final int completed;
+        public final int timedOut;
+        public final double failureRate;
+        public final long lapTimeP50, lapTimeP90, lapTimeP99; // ms, of the completed laps (-1 if none)
+        public final double cellsMoved;                       // average per lap
+        public final int cellsMovedP90;
+        public final double travelled;                        // cm, average per lap
+        public final double rotations;                        // average per lap
+        public final double collisions;                       // average per lap
+        public final double mapErrors;                        // average per lap
+
+        public Summary( Config config, Simulator.Result[] results ) {
+            this.config = config;
+            this.runs   = results.length;
+
+            long[] lapTimes = new long[results.length];
+            int[] cells     = new int[results.length];
+            int done = 0, timeouts = 0;
+            double travelled = 0, rotations = 0, collisions = 0, mapErrors = 0;
+
+            for (int i = 0; i < results.length; i++) {
+                Simulator.Result r = results[i];
+                if ( r.isCompleted() )
+                    lapTimes[done++] = r.lapTime;
+                if ( r.timedOut )
+                    timeouts++;
+
+                cells[i]    = r.cellsMoved;
+                travelled  += r.travelled;
+                rotations  += r.rotations;
+                collisions += r.collisions;
+                mapErrors  += r.mapErrors;
+            }
+
+            lapTimes = Arrays.copyOf(lapTimes, done);
+            Arrays.sort(lapTimes);
+            Arrays.sort(cells);
+
+            int n = Math.max(1, runs);
+            this.completed     = done;
+            this.timedOut      = timeouts;
+            this.failureRate   = runs == 0 ? 0 : 1 - (double) done / runs;
+            this.lapTimeP50    = percentile(lapTimes, 50);
+            this.lapTimeP90    = percentile(lapTimes, 90);
+            this.lapTimeP99    = percentile(lapTimes, 99);
+            this.cellsMoved    = sum(cells) / n;
+            this.cellsMovedP90 = runs == 0 ? 0 : cells[rank(runs, 90)];
+            this.travelled     = travelled / n;
+            this.rotations     = rotations / n;
+            this.collisions    = collisions / n;
+            this.mapErrors     = mapErrors / n;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s: %d/%d completed, lap p50 %.1fs p90 %.1fs p99 %.1fs, %.1f cells, %.0fcm, %.1f rotations, %.1f collisions, %.2f map errors",
+                    config, completed, runs, lapTimeP50 / 1000.0, lapTimeP90 / 1000.0, lapTimeP99 / 1000.0, cellsMoved, travelled, rotations, collisions, mapErrors);
+        }
+    }
+
+    /**
+     * Nearest rank percentile of sorted values, -1 if there are none.
+     */
+    private static long percentile( long[] sorted, int p ) {
+        return sorted.length == 0 ? -1 : sorted[rank(sorted.length, p)];
+    }
+
+    private static int rank( int n, int p ) {
+        return Math.max(0, (int) Math.ceil(p / 100.0 * n) - 1);
+    }
+
+    private static double sum( int[] values ) {
+        double s = 0;
+        for (int v : values)
+            s += v;
+
+        return s;
+    }
+
+    /**
+     * @param arenas random arenas per configuration
+     * @param threads parallelism of the pool
+     */
+    public BatchRunner( int arenas, int threads ) {
+        this.arenas = arenas;
+        this.pool   = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Sets how much simulated time a lap may take before it counts as failed.
+     * @param ms
+     */
+    public void setTimeLimit( long ms ) {
+        this.timeLimit = ms;
+    }
+
+    /**
+     * Simulates a lap of a configuration on a random arena.
+     * @param config
+     * @param seed of the arena and of the noise
+     * @return
+     */
+    public Simulator.Result runLap( Config config, long seed ) {
+        Simulator sim = new Simulator(SimulatedArena.random(WIDTH, HEIGHT, CELL_SIZE, BLOCKS, seed), seed);
+        Robot robot   = sim.getRobot();
+
+        robot.setSpeeds(config.linearSpeed, config.angularSpeed);
+        robot.getGrid().setFreeCellDeterminant(config.freeCellDeterminant);
+        sim.setBehaviours(Core.createBehaviours(robot, config.tour, config.distanceLimit));
+        sim.setTimeLimit(timeLimit);
+
+        return sim.run();
+    }
+
+    /**
+     * Runs every configuration on every arena.
+     * @param configs
+     * @return a summary per configuration (same order)
+     */
+    public List<Summary> run( List<Config> configs ) {
+        Simulator.Result[] results = new Simulator.Result[configs.size() * arenas];
+        pool.invoke(new Laps(configs, results, 0, results.length));
+
+        List<Summary> summaries = new ArrayList<Summary>();
+        for (int c = 0; c < configs.size(); c++)
+            summaries.add(new Summary(configs.get(c), Arrays.copyOfRange(results, c * arenas, (c + 1) * arenas)));
+
+        return summaries;
+    }
+
+    /**
+     * Runs the laps [from, to) (lap i is configuration i/arenas on arena i%arenas), splitting them in halves.
+     */
+    private class Laps extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Config> configs;
+        private final Simulator.Result[] results;
+        private final int from, to;
+
+        Laps( List<Config> configs, Simulator.Result[] results, int from, int to ) {
+            this.configs = configs;
+            this.results = results;
+            this.from    = from;
+            this.to      = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from > SPLIT ) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Laps(configs, results, from, mid), new Laps(configs, results, mid, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++)
+                results[i] = runLap(configs.get(i / arenas), i % arenas);
+        }
+    }
+
+    /**
+     * Writes the summaries as CSV (a header and a row per configuration).
+     * @param summaries
+     * @param out
+     * @throws IOException
+     */
+    public static void writeCsv( List<Summary> summaries, Writer out ) throws IOException {
+        out.write("distance_limit,free_cell_determinant,linear_speed,angular_speed,policy,runs,completed,timed_out,failure_rate,"
+                + "lap_time_p50_ms,lap_time_p90_ms,lap_time_p99_ms,cells_moved,cells_moved_p90,travelled_cm,rotations,collisions,map_errors\n");
+
+        for (Summary s : summaries) {
+            Config c = s.config;
+            out.write(String.format(Locale.ROOT, "%.3f,%.3f,%.1f,%.1f,%s,%d,%d,%d,%.4f,%d,%d,%d,%.2f,%d,%.1f,%.2f,%.2f,%.3f\n",
+                    c.distanceLimit, c.freeCellDeterminant, c.linearSpeed, c.angularSpeed, c.tour ? "tour" : "greedy",
+                    s.runs, s.completed, s.timedOut, s.failureRate, s.lapTimeP50, s.lapTimeP90, s.lapTimeP99,
+                    s.cellsMoved, s.cellsMovedP90, s.travelled, s.rotations, s.collisions, s.mapErrors));
+        }
+    }
+
+    /**
+     * Writes the summaries as a JSON array (an object per configuration).
+     * @param summaries
+     * @param out
+     * @throws IOException
+     */
+    public static void writeJson( List<Summary> summaries, Writer out ) throws IOException {
+        out.write("[\n");
+
+        for (int i = 0; i < summaries.size(); i++) {
+            Summary s = summaries.get(i);
+            Config c  = s.config;
+
+            out.write(String.format(Locale.ROOT, "  {\"distanceLimit\": %.3f, \"freeCellDeterminant\": %.3f, \"linearSpeed\": %.1f, \"angularSpeed\": %.1f, \"policy\": \"%s\", "
+                    + "\"runs\": %d, \"completed\": %d, \"timedOut\": %d, \"failureRate\": %.4f, "
+                    + "\"lapTimeMs\": {\"p50\": %d, \"p90\": %d, \"p99\": %d}, \"cellsMoved\": %.2f, \"cellsMovedP90\": %d, "
+                    + "\"travelledCm\": %.1f, \"rotations\": %.2f, \"collisions\": %.2f, \"mapErrors\": %.3f}%s\n",
+                    c.distanceLimit, c.freeCellDeterminant, c.linearSpeed, c.angularSpeed, c.tour ? "tour" : "greedy",
+                    s.runs, s.completed, s.timedOut, s.failureRate, s.lapTimeP50, s.lapTimeP90, s.lapTimeP99,
+                    s.cellsMoved, s.cellsMovedP90, s.travelled, s.rotations, s.collisions, s.mapErrors,
+                    i < summaries.size() - 1 ? "," : ""));
+        }
+
+        out.write("]\n");
+    }
+
+    /**
+     * Sweeps the distance limit, the free cell determinant, the speeds and the policy.
+     * @return
+     */
+    public static List<Config> defaultSweep() {
+        float[] limits        = {0.12f, 0.135f, 0.15f};
+        double[] determinants = {0.4, 0.5, 0.6};
+        double[][] speeds     = {{15, 90}, {20, 120}};
+
+        List<Config> configs = new ArrayList<Config>();
+        for (float limit : limits)
+            for (double determinant : determinants)
+                for (double[] speed : speeds)
+                    for (int p = 0; p < 2; p++)
+                        configs.add(new Config(limit, determinant, speed[0], speed[1], p == 1));
+
+        return configs;
+    }
+
+    public static void main( String[] args ) throws IOException {
+        int arenas    = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        String prefix = args.length > 1 ? args[1] : "batch";
+        int threads   = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        List<Config> configs = defaultSweep();
+        BatchRunner runner   = new BatchRunner(arenas, threads);
+
+        long start              = System.nanoTime();
+        List<Summary> summaries = runner.run(configs);
+        long wall               = System.nanoTime() - start;
+
+        for (Summary s : summaries)
+            System.out.println(s);
+        System.out.println(String.format(Locale.ROOT, "%d laps on %d threads in %.1fs", configs.size() * arenas, threads, wall / 1e9));
+
+        Writer csv = new FileWriter(prefix + ".csv");
+        try {
+            writeCsv(summaries, csv);
+        } finally {
+            csv.close();
+        }
+
+        Writer json = new FileWriter(prefix + ".json");
+        try {
+            writeJson(summaries, json);
+        } finally {
+            json.close();
+        }
+    }
+}
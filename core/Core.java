@@ -6,7 +6,6 @@ import behaviours.Drive;
 import behaviours.GyroReset;
 import behaviours.Scan;
 import behaviours.Stop;
-import lejos.hardware.Button;
 import lejos.robotics.subsumption.Arbitrator;
 import lejos.robotics.subsumption.Behavior;
 import network.Server;
@@ -19,7 +18,7 @@ public class Core {
     /**
      * Execution start point of the Ev3 Brick program.
      * Initialises:
-     * 		- Robot, Monitor, Server and Arbitrator instances
+     * 		- Robot, Monitor, SensorSampler, Server and Arbitrator instances
      * @param args
      */
     public static void main(String[] args) {
@@ -27,23 +26,21 @@ public class Core {
         Robot robot 	= new Robot();		
         Monitor monitor = new Monitor(robot, MONITOR_DELAY);	
         
+        SensorSampler sampler = new SensorSampler(robot.getHardware());
+        
         robot.installMonitor(monitor);
+        robot.installSampler(sampler);
         
         try {
               server = new Server(PORT, robot);
               robot.installServer(server);
         } catch (IOException e) {
             e.printStackTrace();
+            robot.installServer(Server.offline(robot)); // keep going without the client
         }
         
-        // Set up the behaviours for the Arbitrator and construct it. (higher the index, higher the priority)
-        Behavior b4 = new Stop(robot);
-        Behavior b3 = new Collision(robot);
-        Behavior b2 = new Scan(robot);
-        Behavior b1 = new GyroReset(robot);
-        Behavior b0 = new Drive(robot);
-        
-        Behavior [] bArray = {b0, b1, b2, b3, b4};
+        // Set up the behaviours for the Arbitrator and construct it.
+        Behavior [] bArray = createBehaviours(robot, false);
         Arbitrator arby    = new Arbitrator(bArray);
 
         // Clear arbitrator spew
@@ -52,13 +49,42 @@ public class Core {
    
         // Wait for the user to press start
         monitor.print("Press Start!");				
-        Button.waitForAnyPress();
+        robot.getHardware().getButtons().waitForAnyPress();
         
-        // Start the Pilot Monitor
+        // Start the Pilot Monitor and the sensor sampling
            monitor.start();
+           sampler.start();
            
         // Start the Arbitrator
         arby.go();
     }
+    
+    /**
+     * Creates the behaviours of the robot (higher the index, higher the priority).
+     * @param robot
+     * @param tour if Drive follows a planned tour of the frontier instead of the nearest cell
+     * @return
+     */
+    public static Behavior[] createBehaviours(Robot robot, boolean tour) {
+        return createBehaviours(robot, tour, Scan.DEFAULT_DISTANCE_LIMIT);
+    }
+    
+    /**
+     * Creates the behaviours of the robot (higher the index, higher the priority).
+     * Everything they keep is per instance, so several robots can run in one JVM.
+     * @param robot
+     * @param tour if Drive follows a planned tour of the frontier instead of the nearest cell
+     * @param distanceLimit readings up to this distance (m) are a block on the neighbour cell
+     * @return
+     */
+    public static Behavior[] createBehaviours(Robot robot, boolean tour, float distanceLimit) {
+        Behavior b4 = new Stop(robot);
+        Behavior b3 = new Collision(robot);
+        Behavior b2 = new Scan(robot, distanceLimit);
+        Behavior b1 = new GyroReset(robot);
+        Behavior b0 = new Drive(robot, tour);
+        
+        return new Behavior[] {b0, b1, b2, b3, b4};
+    }
 
-}
\ No newline at end of file
+}
@@ -1,7 +1,5 @@
 package core;
-import lejos.hardware.ev3.LocalEV3;
-import lejos.hardware.lcd.Font;
-import lejos.hardware.lcd.GraphicsLCD;
+import hardware.Display;
 
 /*
  * A class ran on a separate thread that prints out the 
@@ -9,7 +7,7 @@ import lejos.hardware.lcd.GraphicsLCD;
  */
 public class Monitor extends Thread {	
    
-  private final GraphicsLCD lcd = LocalEV3.get().getGraphicsLCD();
+  private final Display lcd;
   private final long PRINT_TIME = 2000;
   private final String TITLE    = "G16";	
 
@@ -22,6 +20,7 @@ public class Monitor extends Thread {
 
       this.delay    = d;
       this.robot 	  = r;
+      this.lcd      = r.getHardware().getDisplay();
       this.suppress = false;
     }
     
@@ -34,11 +33,11 @@ public class Monitor extends Thread {
       suppress = true;
       
       lcd.clear();
-      lcd.setFont(Font.getDefaultFont());
-      lcd.drawString("> " + txt, 0, lcd.getHeight()/2, 0);
+      lcd.setSmallFont(false);
+      lcd.drawString("> " + txt, 0, lcd.getHeight()/2);
       
       try{
-      sleep(PRINT_TIME);
+      robot.getClock().sleep(PRINT_TIME);
       suppress = false;
     }catch(Exception e) {
       e.printStackTrace();
@@ -54,11 +53,11 @@ public class Monitor extends Thread {
           continue;
         
         lcd.clear();
-        lcd.setFont(Font.getSmallFont());
+        lcd.setSmallFont(true);
         
         int _y = 0;
-          for ( String o : robot.getGrid().getPrintString() ) {
-            lcd.drawString(o, 0, _y, 0);
+          for ( String o : robot.getGrid().getSnapshot().getPrintString() ) {
+            lcd.drawString(o, 0, _y);
             _y += 20;
           }
         
@@ -70,10 +69,10 @@ public class Monitor extends Thread {
               "|#C:"+ Integer.toString(robot.getCellsMoved()) +
               "|LC:"+ Boolean.toString(robot.isLapCompleted()).substring(0,1).toUpperCase()
               
-          , 0, _y, 0);
+          , 0, _y);
         
           try{
-          sleep(delay);
+          robot.getClock().sleep(delay);
         }catch(Exception e) {
           e.printStackTrace();
         }
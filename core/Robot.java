@@ -1,20 +1,13 @@
 package core;
 import java.io.Serializable;
 
-import lejos.hardware.Brick;
-import lejos.hardware.BrickFinder;
-import lejos.hardware.motor.EV3LargeRegulatedMotor;
-import lejos.hardware.motor.EV3MediumRegulatedMotor;
-import lejos.hardware.sensor.EV3GyroSensor;
-import lejos.hardware.sensor.EV3TouchSensor;
-import lejos.hardware.sensor.EV3UltrasonicSensor;
-import lejos.robotics.SampleProvider;
-import lejos.robotics.chassis.Chassis;
-import lejos.robotics.chassis.Wheel;
-import lejos.robotics.chassis.WheeledChassis;
+import hardware.CancelToken;
+import hardware.Clock;
+import hardware.EV3Hardware;
+import hardware.Hardware;
+import hardware.Motor;
+import hardware.Pilot;
 import lejos.robotics.geometry.Point;
-import lejos.robotics.localization.OdometryPoseProvider;
-import lejos.robotics.navigation.MovePilot;
 import lejos.robotics.navigation.Pose;
 import libs.OccupancyGrid;
 import libs.Utility;
@@ -23,6 +16,7 @@ import network.Server;
 /**
  * Robot class - this is where all the state of the robot is represented.
  * This class also includes control over certain robot behaviour (such as rotations)
+ * The sensors and motors are reached through a Hardware backend (the EV3 brick or a simulated arena).
  */
 public class Robot implements Serializable {
     //  ID
@@ -33,34 +27,28 @@ public class Robot implements Serializable {
     public final int DEFAULT_ANGULAR_ACCELARATION = 100;
     public final int MAP_CELL_SIZE_X 		 	  = 6;
     public final int MAP_CELL_SIZE_Y 		 	  = 7;
+    public final int DISTANCE_WINDOW 		 	  = 150; // ms, median of the ultrasonic readings once settled
     
-    public final float WHEEL_DIAMETER = 4.2f;
-    public final float CHASSIS_OFFSET = 5.32f;
-     
     private final long START_TIME;
+    private final long START_CPU_TIME;
+    private final long CPU_THREAD; // id of the thread the CPU time is measured for
     
-    // Sensors
-    private EV3TouchSensor lTouchSensor, rTouchSensor;	
-    private EV3UltrasonicSensor uSonicSensor;
-    private EV3GyroSensor gyroSensor;
+    // Sensors, motors, etc.
+    private Hardware hardware;
+    
+    // Speeds (cm/s, degrees/s)
+    private double linearSpeed;
+    private double angularSpeed;
     
     // GyroReset Offset
     private float gyro_offset;
     
-    // Sample arrays
-    private SampleProvider leftSP, rightSP, distSP, gyroSP;	
-    private float[] leftSample, rightSample, distSample, angleSample; 
-    
     // Move Pilot
-    private MovePilot pilot;
+    private Pilot pilot;
 
     // Occupancy Grid
     private OccupancyGrid grid;
     
-    // Motors
-    private EV3MediumRegulatedMotor motorC;
-    private EV3LargeRegulatedMotor motorL, motorR;
-    
     // Robot State
     private boolean needingGyroReset;
     private boolean lapCompleted;
@@ -70,65 +58,52 @@ public class Robot implements Serializable {
     private int cellsMoved;
     
     // Odametry
-    OdometryPoseProvider opp;
     Point currentLocation;
     Point previousLocation;
     
-    // SocketServer and Monitor (not initialised on constructor!)
+    // SocketServer, Monitor and SensorSampler (not initialised on constructor!)
     private Server server;
     private Monitor monitor;
+    private SensorSampler sampler;
     
+    /**
+     * Robot on the EV3 brick.
+     */
     public Robot() {
-        Brick myEV3 = BrickFinder.getDefault();
-        
-        // Set up sensors to their respective ports
-        lTouchSensor = new EV3TouchSensor(myEV3.getPort("S1"));
-        gyroSensor   = new EV3GyroSensor(myEV3.getPort("S2"));
-        uSonicSensor = new EV3UltrasonicSensor(myEV3.getPort("S3"));
-        rTouchSensor = new EV3TouchSensor(myEV3.getPort("S4"));
-
-        leftSP  = lTouchSensor.getTouchMode();
-        rightSP = rTouchSensor.getTouchMode();
-        distSP  = uSonicSensor.getDistanceMode();
-        gyroSP  = gyroSensor.getAngleMode();
-        
-        leftSample  = new float[leftSP.sampleSize()];	// Size is 1
-        rightSample = new float[rightSP.sampleSize()];	// Size is 1
-        distSample  = new float[distSP.sampleSize()];	// Size is 1
-        angleSample = new float[gyroSP.sampleSize()];	// Size is 1
-        
-        motorC = new EV3MediumRegulatedMotor(myEV3.getPort("C"));
-        motorL = new EV3LargeRegulatedMotor(myEV3.getPort("B"));
-        motorR = new EV3LargeRegulatedMotor(myEV3.getPort("D"));
+        this(new EV3Hardware());
+    }
+    
+    /**
+     * Robot on the given hardware (e.g. a SimulatedHardware to run without a brick).
+     * @param hardware
+     */
+    public Robot(Hardware hardware) {
+        this.hardware = hardware;
         
-        // Set up chasis for the pilot
-        Wheel leftWheel   = WheeledChassis.modelWheel(motorL, WHEEL_DIAMETER).offset(-CHASSIS_OFFSET);
-        Wheel rightWheel  = WheeledChassis.modelWheel(motorR, WHEEL_DIAMETER).offset(CHASSIS_OFFSET);
-        Chassis myChassis = new WheeledChassis(new Wheel[]{leftWheel, rightWheel}, WheeledChassis.TYPE_DIFFERENTIAL);
-
-        pilot = new MovePilot(myChassis);
-        pilot.setLinearSpeed(DEFAULT_LINEAR_SPEED); // cm per second
-        pilot.setAngularSpeed(DEFAULT_ANGULAR_SPEED);
+        pilot = hardware.getPilot();
+        setSpeeds(DEFAULT_LINEAR_SPEED, DEFAULT_ANGULAR_SPEED);
         pilot.setAngularAcceleration(DEFAULT_ANGULAR_ACCELARATION); 
         
         // Odometry
-        opp = new OdometryPoseProvider(pilot);
-        Point p 		 = opp.getPose().getLocation();
+        Point p 		 = pilot.getPose().getLocation();
         currentLocation  = p;
         previousLocation = p;
         
         // Init Occupancy Grid and mark the starting cell as unoccupied
-        grid 		= new OccupancyGrid(MAP_CELL_SIZE_X, MAP_CELL_SIZE_Y);
+        grid 		= OccupancyGrid.create(MAP_CELL_SIZE_X, MAP_CELL_SIZE_Y);
         currentCell = grid.getCell(0, 0);
         currentCell.setVisited(true);
         currentCell.unoccupied();
+        grid.publishSnapshot();
         
         // Reset the value of the gyroscope to zero
         gyro_offset = 0;
-        gyroSensor.reset();
+        hardware.getGyro().reset();
         
         // Benchmark and start scanning!
-        START_TIME = System.currentTimeMillis();
+        START_TIME     = hardware.getClock().currentTimeMillis();
+        CPU_THREAD     = Thread.currentThread().getId();
+        START_CPU_TIME = Utility.threadCpuTime(CPU_THREAD);
         
         // Set flags to start behaviour
         setScanning(true);
@@ -151,14 +126,56 @@ public class Robot implements Serializable {
         getServerSocket().sendString(prefix+str);
     }
     
+    /**
+     * Returns the hardware (sensors, motors, etc.) the robot runs on.
+     * @return
+     */
+    public Hardware getHardware() {
+        return hardware;
+    }
+    
+    /**
+     * Sets the speeds the robot drives with.
+     * @param linear cm per second
+     * @param angular degrees per second
+     */
+    public void setSpeeds(double linear, double angular) {
+        this.linearSpeed  = linear;
+        this.angularSpeed = angular;
+        
+        pilot.setLinearSpeed(linear);
+        pilot.setAngularSpeed(angular);
+    }
+    
+    /**
+     * returns the linear speed (cm per second)
+     * @return
+     */
+    public double getLinearSpeed() {
+        return linearSpeed;
+    }
+    
+    /**
+     * returns the angular speed (degrees per second)
+     * @return
+     */
+    public double getAngularSpeed() {
+        return angularSpeed;
+    }
+    
+    /**
+     * Returns the clock of the hardware (wall clock on the brick, virtual in a simulation).
+     * @return
+     */
+    public Clock getClock() {
+        return hardware.getClock();
+    }
+    
     /**
      * Clean up robot method.
      */
     public void closeRobot() {
-        lTouchSensor.close();
-        rTouchSensor.close();
-        uSonicSensor.close();
-        gyroSensor  .close();
+        hardware.close();
     }
     
     /**
@@ -182,8 +199,7 @@ public class Robot implements Serializable {
      * @return
      */
     public boolean isLeftBumpPressed() {
-        leftSP.fetchSample(leftSample, 0);
-        return (leftSample[0] == 1.0);
+        return sampler == null ? hardware.getLeftBumper().isPressed() : sampler.isLeftBumpPressed();
     }
     
     /**
@@ -191,8 +207,7 @@ public class Robot implements Serializable {
      * @return
      */
     public boolean isRightBumpPressed() {
-        rightSP.fetchSample(rightSample, 0);
-        return (rightSample[0] == 1.0);
+        return sampler == null ? hardware.getRightBumper().isPressed() : sampler.isRightBumpPressed();
     }
     
     /**
@@ -200,8 +215,17 @@ public class Robot implements Serializable {
      * @return
      */
     public float getDistance() {
-        distSP.fetchSample(distSample, 0);
-        return distSample[0];
+        return sampler == null ? hardware.getRangeSensor().getDistance() : sampler.getDistance();
+    }
+    
+    /**
+     * returns the median of the distances measured by the ultra-sound in the last window ms
+     * (the current reading when there is no sampler)
+     * @param window ms
+     * @return
+     */
+    public float getDistance(long window) {
+        return sampler == null ? hardware.getRangeSensor().getDistance() : sampler.getDistance(window);
     }
     
     /**
@@ -209,9 +233,7 @@ public class Robot implements Serializable {
      * @return
      */
     public float getAngle() {
-        gyroSP.fetchSample(angleSample, 0);
-        
-        float ang_inc = angleSample[0];
+        float ang_inc = sampler == null ? hardware.getGyro().getAngle() : sampler.getAngle();
         
         return (ang_inc+gyro_offset)%360;
     }
@@ -220,7 +242,7 @@ public class Robot implements Serializable {
      * returns the move pilot attached to the robot
      * @return
      */
-    public MovePilot getPilot() {
+    public Pilot getPilot() {
         return pilot;
     }
     
@@ -288,8 +310,9 @@ public class Robot implements Serializable {
         this.previousCell = this.currentCell;
         this.currentCell  = cell;
         
-        setCurrentLocation(opp.getPose().getLocation());
+        setCurrentLocation(pilot.getPose().getLocation());
         cell.setVisited(true);
+        grid.publishSnapshot();
         
         cellsMoved = cellsMoved + 1;
         
@@ -301,7 +324,7 @@ public class Robot implements Serializable {
      * @return
      */
     public Pose getPose() {
-        return this.opp.getPose();
+        return this.pilot.getPose();
     }
     
     /**
@@ -350,7 +373,17 @@ public class Robot implements Serializable {
      * @return
      */
     public long getElapsedTime() {
-        return System.currentTimeMillis() - START_TIME;
+        return hardware.getClock().currentTimeMillis() - START_TIME;
+    }
+    
+    /**
+     * returns the CPU time used since the start of the run (ms) by the thread that created the robot, -1 if unknown.
+     * On the brick that is the thread running the Arbitrator, so the behaviours.
+     * @return
+     */
+    public long getCpuTime() {
+        long now = Utility.threadCpuTime(CPU_THREAD);
+        return now < 0 || START_CPU_TIME < 0 ? -1 : now - START_CPU_TIME;
     }
     
     /**
@@ -369,12 +402,28 @@ public class Robot implements Serializable {
         return this.monitor;
     }
     
+    /**
+     * installs the sensor sampler the sensor readings come from (read straight from the ports without one)
+     * @param sampler
+     */
+    public void installSampler(SensorSampler sampler) {
+        this.sampler = sampler;
+    }
+    
+    /**
+     * returns the sensor sampler instance, null if there is none
+     * @return
+     */
+    public SensorSampler getSampler() {
+        return this.sampler;
+    }
+    
     /**
      * returns the motor controling the ultrasonic sensor
      * @return
      */
-    public EV3MediumRegulatedMotor getUSMotor() {
-        return this.motorC;
+    public Motor getUSMotor() {
+        return hardware.getScanMotor();
     }
     
     private int overflow_prevention = 1; // exists because sensors cant be trusted
@@ -383,6 +432,15 @@ public class Robot implements Serializable {
      * @param targetCell
      */
     public void rotateTowardsCell(OccupancyGrid.GridCell targetCell) {
+        rotateTowardsCell(targetCell, null);
+    }
+    
+    /**
+     * Rotates the robot towards a given cell, stops waiting (and correcting) once cancelled.
+     * @param targetCell
+     * @param cancel (e.g. the suppression of the calling behaviour, null to always finish)
+     */
+    public void rotateTowardsCell(OccupancyGrid.GridCell targetCell, CancelToken cancel) {
         float map_ang = grid.getAngleToCell(currentCell, targetCell);
         float sta_ang = getAngle();
         float rot_ang = map_ang - sta_ang;
@@ -400,8 +458,8 @@ public class Robot implements Serializable {
         
         pilot.rotate(rot_ang, true);
         
-        while(pilot.isMoving())
-            Thread.yield();
+        if ( !pilot.waitComplete(cancel) )
+            return;
         
         float end_ang = getAngle();
         float da 	  = Math.abs(sta_ang - end_ang);
@@ -409,7 +467,7 @@ public class Robot implements Serializable {
     
         if ( dr > 2 && overflow_prevention%33 != 0 ) { 
             overflow_prevention += 1;
-            rotateTowardsCell(targetCell);
+            rotateTowardsCell(targetCell, cancel);
         }
     }
     
@@ -428,9 +486,7 @@ public class Robot implements Serializable {
         rot_ang = Utility.ShortestRotationAngle(rot_ang);
         
         pilot.rotate(rot_ang, true);
-        
-        while(pilot.isMoving())
-            Thread.yield();
+        pilot.waitComplete(null);
         
         float end_ang = getAngle();
         float da 	  = Math.abs(sta_ang - end_ang);
@@ -450,7 +506,11 @@ public class Robot implements Serializable {
         map_ang 	= Utility.ShortestRotationAngle(map_ang);
         gyro_offset = map_ang;
         
-        gyroSensor.reset();
+        if ( sampler == null )
+            hardware.getGyro().reset();
+        else // the sampler reads the gyro, it resets it between two reads
+            sampler.resetGyro();
+        
         getServerSocket().sendString("Reset gyro with offset: " + map_ang);
     }
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+package core;
+import hardware.Clock;
+import hardware.Hardware;
+import libs.SampleBuffer;
+
+/**
+ * A class ran on a separate thread that reads the sensors at a fixed rate each (gyro, ultrasonic, bumpers)
+ * into SampleBuffers of timestamped samples, so the behaviours never wait on a sensor port.
+ * Once it runs it is the only thread touching the ports: readers get the latest value or the median of a
+ * window from the buffers (waiting for the next sample when there is none yet), and gyro resets are handed
+ * to it and done between two reads. Before it is started (or after it stopped) the ports are read directly.
+ * Bumpers are sampled as 1 (pressed) or 0.
+ */
+public class SensorSampler extends Thread {
+    public static final int DEFAULT_GYRO_RATE   = 200; // Hz
+    public static final int DEFAULT_RANGE_RATE  = 20;  // Hz, the ultrasonic sensor doesn't measure faster
+    public static final int DEFAULT_BUMPER_RATE = 100; // Hz
+    public static final int CAPACITY            = 64;  // samples kept per sensor
+
+    private static final int GYRO_SENSOR         = 0;
+    private static final int RANGE_SENSOR        = 1;
+    private static final int LEFT_BUMPER_SENSOR  = 2;
+    private static final int RIGHT_BUMPER_SENSOR = 3;
+    private static final long WAIT_BOUND         = 50; // ms, waits re-check that the sampler still runs
+
+    public final SampleBuffer GYRO         = new SampleBuffer(CAPACITY);
+    public final SampleBuffer RANGE        = new SampleBuffer(CAPACITY);
+    public final SampleBuffer LEFT_BUMPER  = new SampleBuffer(CAPACITY);
+    public final SampleBuffer RIGHT_BUMPER = new SampleBuffer(CAPACITY);
+
+    private final Hardware hardware;
+    private final Clock clock;
+    private final long[] periods; // ns, per sensor in the order of the buffers
+
+    // readers waiting for a sample and gyro resets waiting to be done
+    private final Object lock = new Object();
+    private volatile int waiters;
+    private volatile long resetsRequested;
+    private volatile long resetsDone;
+
+    private volatile boolean stopped;
+
+    /**
+     * Sampler with the default rates.
+     * @param hardware
+     */
+    public SensorSampler( Hardware hardware ) {
+        this(hardware, DEFAULT_GYRO_RATE, DEFAULT_RANGE_RATE, DEFAULT_BUMPER_RATE);
+    }
+
+    /**
+     * @param hardware
+     * @param gyroRate Hz
+     * @param rangeRate Hz
+     * @param bumperRate Hz, of each bumper
+     */
+    public SensorSampler( Hardware hardware, int gyroRate, int rangeRate, int bumperRate ) {
+        this.setDaemon(true);
+
+        this.hardware = hardware;
+        this.clock    = hardware.getClock();
+        this.periods  = new long[] { period(gyroRate), period(rangeRate), period(bumperRate), period(bumperRate) };
+    }
+
+    private static long period( int rate ) {
+        if ( rate <= 0 )
+            throw new IllegalArgumentException("Sampling rate must be positive: " + rate);
+
+        return 1000000000L / rate;
+    }
+
+    /**
+     * Stops the sampling (the buffers keep their last samples).
+     */
+    public void shutdown() {
+        stopped = true;
+        interrupt();
+    }
+
+    /**
+     * Returns the angle of the gyro (the first one after a reset, once there is one).
+     * @return degrees
+     */
+    public float getAngle() {
+        return latest(GYRO_SENSOR, Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the last distance measured by the ultrasonic sensor.
+     * @return m
+     */
+    public float getDistance() {
+        return latest(RANGE_SENSOR, Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the median of the distances measured in the last window ms, the next one if there is none.
+     * @param window ms
+     * @return m
+     */
+    public float getDistance( long window ) {
+        long now     = clock.nanoTime();
+        float median = RANGE.getMedian(window * 1000000, now);
+
+        return Float.isNaN(median) ? latest(RANGE_SENSOR, now) : median;
+    }
+
+    public boolean isLeftBumpPressed() {
+        return latest(LEFT_BUMPER_SENSOR, Long.MIN_VALUE) > 0;
+    }
+
+    public boolean isRightBumpPressed() {
+        return latest(RIGHT_BUMPER_SENSOR, Long.MIN_VALUE) > 0;
+    }
+
+    /**
+     * Resets the gyro between two reads of the sampler and waits until it is done, the gyro samples taken
+     * before are dropped.
+     */
+    public void resetGyro() {
+        if ( !isAlive() ) {
+            hardware.getGyro().reset();
+            GYRO.invalidate(clock.nanoTime());
+            return;
+        }
+
+        synchronized (lock) {
+            long ticket = ++resetsRequested;
+
+            try {
+                while (resetsDone < ticket && isAlive())
+                    lock.wait(WAIT_BOUND);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Run method of the thread sampling the sensors.
+     */
+    public void run() {
+        long[] next = new long[periods.length];
+        long start  = clock.nanoTime();
+
+        for (int i = 0; i < next.length; i++)
+            next[i] = start;
+
+        while (!stopped) {
+            long requested = resetsRequested;
+            if ( requested != resetsDone ) {
+                hardware.getGyro().reset();
+                GYRO.invalidate(clock.nanoTime());
+                next[GYRO_SENSOR] = clock.nanoTime(); // readers are waiting for the first angle after it
+
+                synchronized (lock) {
+                    resetsDone = requested;
+                    lock.notifyAll();
+                }
+            }
+
+            long now  = clock.nanoTime();
+            long wake = Long.MAX_VALUE;
+
+            for (int i = 0; i < next.length; i++) {
+                if ( now >= next[i] ) {
+                    sample(i);
+
+                    next[i] += periods[i];
+                    if ( next[i] < now ) // fell behind, skip the missed samples instead of catching up
+                        next[i] = now + periods[i];
+                }
+
+                wake = Math.min(wake, next[i]);
+            }
+
+            if ( waiters > 0 )
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+
+            long delay = (wake - clock.nanoTime() + 999999) / 1000000;
+            if ( delay <= 0 )
+                continue;
+
+            try {
+                clock.sleep(delay);
+            } catch (InterruptedException e) {
+                // shutdown
+            }
+        }
+    }
+
+    /**
+     * Returns the value of the last sample of a sensor taken at or after a time, waits for one if there is
+     * none. Reads the port itself when the sampler isn't running (nobody else is reading it then).
+     * @param sensor index in the order of the buffers
+     * @param since ns
+     * @return NaN only if interrupted before there was a sample
+     */
+    private float latest( int sensor, long since ) {
+        SampleBuffer buffer = buffer(sensor);
+
+        if ( isAlive() ) {
+            // the time first, the value is then of the same sample or a newer one
+            if ( buffer.getLatestTime() >= since ) {
+                float value = buffer.getLatest();
+                if ( !Float.isNaN(value) )
+                    return value;
+            }
+
+            synchronized (lock) {
+                waiters++;
+
+                try {
+                    while (isAlive()) {
+                        if ( buffer.getLatestTime() >= since ) {
+                            float value = buffer.getLatest();
+                            if ( !Float.isNaN(value) )
+                                return value;
+                        }
+
+                        lock.wait(WAIT_BOUND);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return buffer.getLatest();
+                } finally {
+                    waiters--;
+                }
+            }
+        }
+
+        return read(sensor);
+    }
+
+    /**
+     * Reads one sensor into its buffer. The sample is timed at the middle of the read, so a slow sensor
+     * (the ultrasonic) isn't dated a whole read early. Resets only happen between reads, so every sample
+     * after one is timed after it too.
+     * @param sensor index in the order of the buffers
+     */
+    private void sample( int sensor ) {
+        long before = clock.nanoTime();
+        float value = read(sensor);
+        long after  = clock.nanoTime();
+
+        buffer(sensor).add(before + (after - before) / 2, value);
+    }
+
+    private SampleBuffer buffer( int sensor ) {
+        switch (sensor) {
+            case GYRO_SENSOR:
+                return GYRO;
+            case RANGE_SENSOR:
+                return RANGE;
+            case LEFT_BUMPER_SENSOR:
+                return LEFT_BUMPER;
+            default:
+                return RIGHT_BUMPER;
+        }
+    }
+
+    private float read( int sensor ) {
+        switch (sensor) {
+            case GYRO_SENSOR:
+                return hardware.getGyro().getAngle();
+            case RANGE_SENSOR:
+                return hardware.getRangeSensor().getDistance();
+            case LEFT_BUMPER_SENSOR:
+                return hardware.getLeftBumper().isPressed() ? 1 : 0;
+            default:
+                return hardware.getRightBumper().isPressed() ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package core;
+import hardware.SimulatedArena;
+import hardware.SimulatedHardware;
+import hardware.VirtualClock;
+import lejos.robotics.subsumption.Behavior;
+import libs.OccupancyGrid;
+import network.Server;
+
+/**
+ * Discrete-event simulation of a lap: the behaviours of Core (Drive, GyroReset, Scan, Collision, Stop) run
+ * against a SimulatedHardware on a VirtualClock, so the time only moves when the robot waits.
+ * Polling a move jumps to its end, sleeps jump by their delay, a lap takes as long as its computation.
+ *
+ * The behaviours are arbitrated on the calling thread like the leJOS Arbitrator does it: the highest
+ * behaviour wanting control runs its action, and whenever the robot waits the behaviours above it are asked
+ * (the Arbitrator thread would ask them during the wait) and the running one is suppressed if one of them
+ * wants control. The lap ends when Stop exits, or fails when it runs over the time limit.
+ * Actions that didn't wait at all still cost IDLE_STEP, so a robot stuck in a loop times out.
+ * Monitor is installed but not started and the server is offline.
+ */
+public class Simulator {
+    public static final long DEFAULT_TIME_LIMIT = 30 * 60 * 1000; // ms of simulated time
+    public static final long IDLE_STEP          = 10;             // ms, when nothing else moves the time
+
+    private final SimulatedArena arena;
+    private final VirtualClock clock;
+    private final SimulatedHardware hardware;
+    private final Robot robot;
+
+    private Behavior[] behaviours;
+    private int active;     // index of the behaviour running, -1 for none
+    private long timeLimit; // ms
+    private long lapTime;   // ms, -1 until the lap is completed
+
+    /**
+     * @param arena
+     * @param seed seed of the sensor and motion noise
+     */
+    public Simulator( SimulatedArena arena, long seed ) {
+        this.arena     = arena;
+        this.clock     = new VirtualClock();
+        this.hardware  = new SimulatedHardware(arena, seed, clock);
+        this.robot     = new Robot(hardware);
+        this.timeLimit = DEFAULT_TIME_LIMIT;
+
+        robot.installMonitor(new Monitor(robot, Core.MONITOR_DELAY));
+        robot.installServer(Server.offline(robot));
+        setBehaviours(Core.createBehaviours(robot, false));
+    }
+
+    /**
+     * Replaces the behaviours (e.g. Core.createBehaviours(getRobot(), true) for the tour policy).
+     * @param behaviours higher the index, higher the priority
+     */
+    public void setBehaviours( Behavior[] behaviours ) {
+        this.behaviours = behaviours;
+    }
+
+    /**
+     * Sets how much simulated time a lap may take before it counts as failed.
+     * @param ms
+     */
+    public void setTimeLimit( long ms ) {
+        this.timeLimit = ms;
+    }
+
+    public Robot getRobot() {
+        return robot;
+    }
+
+    public SimulatedHardware getHardware() {
+        return hardware;
+    }
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Runs the lap until Stop exits or the time limit is reached.
+     * @return
+     */
+    public Result run() {
+        active  = -1;
+        lapTime = -1;
+        clock.setListener(new Runnable() {
+            public void run() {
+                onTimePassed();
+            }
+        });
+
+        boolean timedOut = false;
+        try {
+            while (true) {
+                checkLap();
+
+                int next = highestWantingControl();
+                if ( next < 0 ) {
+                    clock.advance(IDLE_STEP * 1000000);
+                    continue;
+                }
+
+                long start = clock.nanoTime();
+
+                active = next;
+                behaviours[next].action();
+                active = -1;
+
+                // a behaviour re-running without ever waiting (e.g. stuck on a bump) still has to run out of time
+                if ( clock.nanoTime() == start )
+                    clock.advance(IDLE_STEP * 1000000);
+            }
+        } catch (SimulatedHardware.ExitException e) {
+            // Stop ended the program
+        } catch (TimeLimitException e) {
+            timedOut = true;
+        } finally {
+            clock.setListener(null);
+        }
+
+        checkLap();
+        return new Result(lapTime, timedOut, robot.getCellsMoved(), hardware.getRotations(),
+                          hardware.getCollisions(), hardware.getTravelled(), countMapErrors());
+    }
+
+    /**
+     * Called whenever the virtual clock moved, i.e. while the running behaviour waits.
+     */
+    private void onTimePassed() {
+        if ( clock.currentTimeMillis() > timeLimit )
+            throw new TimeLimitException();
+
+        checkLap();
+
+        if ( active >= 0 && highestWantingControl() > active )
+            behaviours[active].suppress();
+    }
+
+    private void checkLap() {
+        if ( lapTime < 0 && robot.isLapCompleted() )
+            lapTime = robot.getElapsedTime();
+    }
+
+    /**
+     * Returns the highest behaviour wanting control, -1 for none.
+     */
+    private int highestWantingControl() {
+        for (int i = behaviours.length - 1; i >= 0; i--)
+            if ( behaviours[i].takeControl() )
+                return i;
+
+        return -1;
+    }
+
+    /**
+     * Counts the cells of the arena the robot mapped wrong (blocked as free or free as blocked), cells it
+     * knows nothing about don't count.
+     */
+    private int countMapErrors() {
+        OccupancyGrid grid = robot.getGrid();
+        int errors         = 0;
+
+        for (int x = 0; x < Math.min(grid.WIDTH, arena.WIDTH); x++)
+            for (int y = 0; y < Math.min(grid.HEIGHT, arena.HEIGHT); y++) {
+                OccupancyGrid.GridCell cell = grid.getCell(x, y);
+                if ( cell.getC() > 0 && grid.isBlocked(cell.getP()) != arena.isBlocked(x, y) )
+                    errors++;
+            }
+
+        return errors;
+    }
+
+    /**
+     * Thrown from the clock to unwind a lap that ran out of time.
+     */
+    private static class TimeLimitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Outcome of a simulated lap.
+     */
+    public static class Result {
+        public final long lapTime;       // ms of simulated time, -1 if the lap wasn't completed
+        public final boolean timedOut;
+        public final int cellsMoved;
+        public final int rotations;
+        public final int collisions;
+        public final double travelled;   // cm
+        public final int mapErrors;      // cells mapped wrong
+
+        public Result( long lapTime, boolean timedOut, int cellsMoved, int rotations, int collisions,
+                       double travelled, int mapErrors ) {
+            this.lapTime    = lapTime;
+            this.timedOut   = timedOut;
+            this.cellsMoved = cellsMoved;
+            this.rotations  = rotations;
+            this.collisions = collisions;
+            this.travelled  = travelled;
+            this.mapErrors  = mapErrors;
+        }
+
+        public boolean isCompleted() {
+            return lapTime >= 0;
+        }
+
+        @Override
+        public String toString() {
+            return (isCompleted() ? "lap " + lapTime + "ms" : timedOut ? "timed out" : "stopped")
+                 + ", cells moved: " + cellsMoved + ", rotations: " + rotations + ", collisions: " + collisions
+                 + ", travelled: " + Math.round(travelled) + "cm, map errors: " + mapErrors;
+        }
+    }
+}
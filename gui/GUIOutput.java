@@ -21,6 +21,8 @@ public class GUIOutput {
     // private members
     private RobotState robotState;
     private JButton[][] gridButtons;
+    private long lastVersion = -1;               // grid version of the last painted state
+    private OccupancyGrid.GridCell lastCell;     // robot cell of the last painted state
     // public frame
     public JFrame frame;
 
@@ -85,48 +87,69 @@ public class GUIOutput {
                 gridButtons[i][j] = new JButton("V("+i+","+j+") - P(0.00)");
 
                 setColors(gridButtons[i][j], i, j);
+                
+                final int x = i, y = j;
+                gridButtons[i][j].addActionListener(new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        if ( robotState != null ) 
+                            new GUIInfoBox(robotState.grid.getCell(x, y));
+                    }
+                });
 
                 gridPanel.add(gridButtons[i][j]);
             }
         }
     }
     
+    /**
+     * Repaints the button of a single cell.
+     * @param i
+     * @param j
+     */
+    private void updateCell(int i, int j) {
+        if ( i < 0 || j < 0 || i >= WIDTH || j >= HEIGHT )
+            return;
+        
+        OccupancyGrid.GridCell cell = robotState.grid.getCell(i, j);
+        gridButtons[i][j].setText("V("+i+","+j+") - P("+cell.getP()+")");
+        
+        setColors(gridButtons[i][j], i, j);
+        
+        if( cell.isVisited() )
+            gridButtons[i][j].setBackground(Color.GRAY);
+        
+        if( cell.getP() > 0.5 )
+            gridButtons[i][j].setBackground(Color.BLACK);
+        
+        if ( cell.x == robotState.currentCell.x && cell.y ==  robotState.currentCell.y )
+            gridButtons[i][j].setBackground(Color.PINK);
+    }
+    
     /**
      * Method used to update the gui state.
+     * Only the cells that changed since the last state (and the robot's old/new cell) are repainted.
      */
     private void updateGUI() {
-        for(int i=0; i<WIDTH; i++) {
-            for(int j=0; j<HEIGHT; j++) {
-                final OccupancyGrid.GridCell cell = robotState.grid.getCell(i, j);
-                gridButtons[i][j].setText("V("+i+","+j+") - P("+cell.getP()+")");
-                
-                setColors(gridButtons[i][j], i, j);
-                
-                if( cell.isVisited() )
-                    gridButtons[i][j].setBackground(Color.GRAY);
-                
-                if( cell.getP() > 0.5 )
-                    gridButtons[i][j].setBackground(Color.BLACK);
-                
-                if ( cell.x == robotState.currentCell.x && cell.y ==  robotState.currentCell.y )
-                    gridButtons[i][j].setBackground(Color.PINK);
-                
-                
-                ActionListener buttonClick = new ActionListener() {
-                    @Override
-                    public void actionPerformed(ActionEvent e) {
-                        GUIInfoBox infoBox = new GUIInfoBox(cell);
-                    }
-                };
-                
-                ActionListener[] als = gridButtons[i][j].getActionListeners();
-                if ( als.length <= 0 ) {
-                    gridButtons[i][j].addActionListener(buttonClick);
-                }else {
-                    als[0] = buttonClick;
-                }
-            }
+        OccupancyGrid grid = robotState.grid;
+        int[] changes      = lastVersion < 0 || grid.getVersion() < lastVersion ? null : grid.changesSince(lastVersion);
+        
+        if ( changes == null ) { // first/out of order state or too many changes, repaint everything
+            for(int i=0; i<WIDTH; i++)
+                for(int j=0; j<HEIGHT; j++)
+                    updateCell(i, j);
+        } else {
+            for ( int index : changes )
+                updateCell(index / grid.HEIGHT, index % grid.HEIGHT);
+            
+            if ( lastCell != null )
+                updateCell(lastCell.x, lastCell.y);
+            
+            updateCell(robotState.currentCell.x, robotState.currentCell.y);
         }
+        
+        lastVersion = grid.getVersion();
+        lastCell    = robotState.currentCell;
     }
     
     /**
@@ -0,0 +1,13 @@
+package hardware;
+
+/**
+ * Buttons of the brick.
+ */
+public interface Buttons {
+    boolean isEscapeDown();
+    
+    /**
+     * Waits until any button is pressed.
+     */
+    void waitForAnyPress();
+}
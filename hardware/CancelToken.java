@@ -0,0 +1,55 @@
+package hardware;
+
+/**
+ * Ends waits on another thread early (e.g. a behaviour waiting for its move when the Arbitrator suppresses it).
+ * A thread waiting on a monitor registers it with setWaiter() and checks isCancelled() while holding the
+ * monitor, cancel() notifies the monitor, so a cancel is never missed.
+ */
+public class CancelToken {
+    private boolean cancelled;
+    private Object waiter; // monitor of the wait in progress
+
+    /**
+     * Cancels the token and wakes up the thread waiting on it.
+     */
+    public void cancel() {
+        Object w;
+        synchronized (this) {
+            cancelled = true;
+            w         = waiter;
+        }
+
+        if ( w != null )
+            synchronized (w) {
+                w.notifyAll();
+            }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Makes the token usable again (e.g. at the start of a new action).
+     */
+    public synchronized void reset() {
+        cancelled = false;
+    }
+
+    /**
+     * Sets the monitor the thread waits on, notified when the token is cancelled.
+     * @param monitor (null once the wait is over)
+     */
+    public synchronized void setWaiter( Object monitor ) {
+        this.waiter = monitor;
+    }
+
+    /**
+     * Returns if a token is cancelled, null never is.
+     * @param token
+     * @return
+     */
+    public static boolean isCancelled( CancelToken token ) {
+        return token != null && token.isCancelled();
+    }
+}
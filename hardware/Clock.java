@@ -0,0 +1,48 @@
+package hardware;
+
+/**
+ * Time as seen by the robot: the wall clock on the brick, a virtual clock in a simulation (moves and
+ * delays then take no real time at all).
+ */
+public interface Clock {
+    /**
+     * Returns the current time (ms).
+     * @return
+     */
+    long currentTimeMillis();
+    
+    /**
+     * Returns the current time (ns), only for measuring intervals.
+     * @return
+     */
+    long nanoTime();
+    
+    /**
+     * Waits for a number of ms.
+     * @param ms
+     * @throws InterruptedException
+     */
+    void sleep(long ms) throws InterruptedException;
+    
+    /**
+     * Called by hardware polled for something that is known to happen at a given time (e.g. the end of a move).
+     * The wall clock does nothing (the caller keeps polling), a virtual clock jumps to that time.
+     * @param nanos time of the event (ns, like nanoTime())
+     */
+    void idleUntil(long nanos);
+    
+    /**
+     * Waits on a monitor held by the caller until a time or until the monitor is notified.
+     * The wall clock blocks, a virtual clock jumps to that time (nobody else could notify it).
+     * @param monitor
+     * @param nanos time to wait for (ns, like nanoTime())
+     * @throws InterruptedException
+     */
+    void waitUntil(Object monitor, long nanos) throws InterruptedException;
+    
+    /**
+     * Returns if the time is the real (unscaled) wall clock, only then can it be compared with CPU times.
+     * @return
+     */
+    boolean isWallClock();
+}
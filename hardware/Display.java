@@ -0,0 +1,28 @@
+package hardware;
+
+/**
+ * Screen of the brick.
+ */
+public interface Display {
+    void clear();
+    
+    /**
+     * Selects the font of the next strings drawn.
+     * @param small small font if true, default font otherwise
+     */
+    void setSmallFont(boolean small);
+    
+    /**
+     * Draws a string, (x,y) is the top left corner in pixels.
+     * @param txt
+     * @param x
+     * @param y
+     */
+    void drawString(String txt, int x, int y);
+    
+    /**
+     * Returns the height of the screen in pixels.
+     * @return
+     */
+    int getHeight();
+}
@@ -0,0 +1,262 @@
+package hardware;
+import lejos.hardware.Brick;
+import lejos.hardware.BrickFinder;
+import lejos.hardware.Button;
+import lejos.hardware.Sound;
+import lejos.hardware.ev3.LocalEV3;
+import lejos.hardware.lcd.Font;
+import lejos.hardware.lcd.GraphicsLCD;
+import lejos.hardware.motor.EV3LargeRegulatedMotor;
+import lejos.hardware.motor.EV3MediumRegulatedMotor;
+import lejos.hardware.sensor.EV3GyroSensor;
+import lejos.hardware.sensor.EV3TouchSensor;
+import lejos.hardware.sensor.EV3UltrasonicSensor;
+import lejos.robotics.RegulatedMotor;
+import lejos.robotics.RegulatedMotorListener;
+import lejos.robotics.SampleProvider;
+import lejos.robotics.chassis.Chassis;
+import lejos.robotics.chassis.Wheel;
+import lejos.robotics.chassis.WheeledChassis;
+import lejos.robotics.localization.OdometryPoseProvider;
+import lejos.robotics.navigation.Move;
+import lejos.robotics.navigation.MoveListener;
+import lejos.robotics.navigation.MovePilot;
+import lejos.robotics.navigation.MoveProvider;
+import lejos.robotics.navigation.Pose;
+
+/**
+ * The EV3 brick (leJOS): touch sensors on S1/S4, gyro on S2, ultrasonic on S3,
+ * sonar motor on C and the wheels on B/D.
+ */
+public class EV3Hardware implements Hardware {
+    public final float WHEEL_DIAMETER = 4.2f;
+    public final float CHASSIS_OFFSET = 5.32f;
+    private static final long WAIT_BOUND = 50; // ms, longest wait between two checks (in case an event is missed)
+
+    // Sensors
+    private EV3TouchSensor lTouchSensor, rTouchSensor;
+    private EV3UltrasonicSensor uSonicSensor;
+    private EV3GyroSensor gyroSensor;
+
+    // Sample arrays
+    private SampleProvider leftSP, rightSP, distSP, gyroSP;
+    private float[] leftSample, rightSample, distSample, angleSample;
+
+    // Motors
+    private EV3MediumRegulatedMotor motorC;
+    private EV3LargeRegulatedMotor motorL, motorR;
+
+    private Pilot pilot;
+    private Motor scanMotor;
+    private TouchSensor leftBumper, rightBumper;
+    private RangeSensor rangeSensor;
+    private GyroSensor gyro;
+    private Speaker speaker;
+    private Display display;
+    private Buttons buttons;
+    private Clock clock = new SystemClock();
+
+    // Notified by the motors when they stop
+    private final Object pilotStopped = new Object();
+    private final Object motorStopped = new Object();
+
+    public EV3Hardware() {
+        Brick myEV3 = BrickFinder.getDefault();
+
+        // Set up sensors to their respective ports
+        lTouchSensor = new EV3TouchSensor(myEV3.getPort("S1"));
+        gyroSensor   = new EV3GyroSensor(myEV3.getPort("S2"));
+        uSonicSensor = new EV3UltrasonicSensor(myEV3.getPort("S3"));
+        rTouchSensor = new EV3TouchSensor(myEV3.getPort("S4"));
+
+        leftSP  = lTouchSensor.getTouchMode();
+        rightSP = rTouchSensor.getTouchMode();
+        distSP  = uSonicSensor.getDistanceMode();
+        gyroSP  = gyroSensor.getAngleMode();
+
+        leftSample  = new float[leftSP.sampleSize()];	// Size is 1
+        rightSample = new float[rightSP.sampleSize()];	// Size is 1
+        distSample  = new float[distSP.sampleSize()];	// Size is 1
+        angleSample = new float[gyroSP.sampleSize()];	// Size is 1
+
+        motorC = new EV3MediumRegulatedMotor(myEV3.getPort("C"));
+        motorL = new EV3LargeRegulatedMotor(myEV3.getPort("B"));
+        motorR = new EV3LargeRegulatedMotor(myEV3.getPort("D"));
+
+        // Set up chasis for the pilot
+        Wheel leftWheel   = WheeledChassis.modelWheel(motorL, WHEEL_DIAMETER).offset(-CHASSIS_OFFSET);
+        Wheel rightWheel  = WheeledChassis.modelWheel(motorR, WHEEL_DIAMETER).offset(CHASSIS_OFFSET);
+        Chassis myChassis = new WheeledChassis(new Wheel[]{leftWheel, rightWheel}, WheeledChassis.TYPE_DIFFERENTIAL);
+
+        final MovePilot movePilot      = new MovePilot(myChassis);
+        final OdometryPoseProvider opp = new OdometryPoseProvider(movePilot);
+        final GraphicsLCD lcd          = LocalEV3.get().getGraphicsLCD();
+
+        movePilot.addMoveListener(new MoveListener() {
+            public void moveStarted(Move event, MoveProvider mp) { }
+            public void moveStopped(Move event, MoveProvider mp) { wake(pilotStopped); }
+        });
+
+        motorC.addListener(new RegulatedMotorListener() {
+            public void rotationStarted(RegulatedMotor motor, int tachoCount, boolean stalled, long timeStamp) { }
+            public void rotationStopped(RegulatedMotor motor, int tachoCount, boolean stalled, long timeStamp) { wake(motorStopped); }
+        });
+
+        pilot = new Pilot() {
+            public void travel(double distance, boolean immediateReturn) { movePilot.travel(distance, immediateReturn); }
+            public void rotate(double angle, boolean immediateReturn)    { movePilot.rotate(angle, immediateReturn); }
+            public void stop()                                           { movePilot.stop(); }
+            public boolean isMoving()                                    { return movePilot.isMoving(); }
+            public boolean waitComplete(CancelToken cancel)              { return waitWhileMoving(pilotStopped, this, null, cancel); }
+            public void setLinearSpeed(double speed)                     { movePilot.setLinearSpeed(speed); }
+            public void setAngularSpeed(double speed)                    { movePilot.setAngularSpeed(speed); }
+            public void setAngularAcceleration(double acceleration)      { movePilot.setAngularAcceleration(acceleration); }
+            public Pose getPose()                                        { return opp.getPose(); }
+        };
+
+        scanMotor = new Motor() {
+            public void rotate(int angle, boolean immediateReturn) { motorC.rotate(angle, immediateReturn); }
+            public boolean isMoving()                              { return motorC.isMoving(); }
+            public boolean waitComplete(CancelToken cancel)        { return waitWhileMoving(motorStopped, null, this, cancel); }
+            public void stop()                                     { motorC.stop(); }
+            public int getTachoCount()                             { return motorC.getTachoCount(); }
+        };
+
+        leftBumper = new TouchSensor() {
+            public boolean isPressed() {
+                leftSP.fetchSample(leftSample, 0);
+                return (leftSample[0] == 1.0);
+            }
+        };
+
+        rightBumper = new TouchSensor() {
+            public boolean isPressed() {
+                rightSP.fetchSample(rightSample, 0);
+                return (rightSample[0] == 1.0);
+            }
+        };
+
+        rangeSensor = new RangeSensor() {
+            public float getDistance() {
+                distSP.fetchSample(distSample, 0);
+                return distSample[0];
+            }
+        };
+
+        gyro = new GyroSensor() {
+            public float getAngle() {
+                gyroSP.fetchSample(angleSample, 0);
+                return angleSample[0];
+            }
+
+            public void reset() {
+                gyroSensor.reset();
+            }
+        };
+
+        speaker = new Speaker() {
+            public void beep()           { Sound.beep(); }
+            public void twoBeeps()       { Sound.twoBeeps(); }
+            public void beepSequence()   { Sound.beepSequence(); }
+            public void beepSequenceUp() { Sound.beepSequenceUp(); }
+        };
+
+        display = new Display() {
+            public void clear()                              { lcd.clear(); }
+            public void setSmallFont(boolean small)          { lcd.setFont(small ? Font.getSmallFont() : Font.getDefaultFont()); }
+            public void drawString(String txt, int x, int y) { lcd.drawString(txt, x, y, 0); }
+            public int getHeight()                           { return lcd.getHeight(); }
+        };
+
+        buttons = new Buttons() {
+            public boolean isEscapeDown() { return Button.ESCAPE.isDown(); }
+            public void waitForAnyPress() { Button.waitForAnyPress(); }
+        };
+    }
+
+    private static void wake( Object monitor ) {
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks on a monitor notified by the motor listeners until the pilot (or else the motor) stopped moving.
+     */
+    private static boolean waitWhileMoving( Object monitor, Pilot pilot, Motor motor, CancelToken cancel ) {
+        if ( cancel != null )
+            cancel.setWaiter(monitor);
+
+        try {
+            synchronized (monitor) {
+                while (isMoving(pilot, motor) && !CancelToken.isCancelled(cancel))
+                    monitor.wait(WAIT_BOUND);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if ( cancel != null )
+                cancel.setWaiter(null);
+        }
+
+        return !isMoving(pilot, motor);
+    }
+
+    private static boolean isMoving( Pilot pilot, Motor motor ) {
+        return pilot != null ? pilot.isMoving() : motor.isMoving();
+    }
+
+    public Pilot getPilot() {
+        return pilot;
+    }
+
+    public Motor getScanMotor() {
+        return scanMotor;
+    }
+
+    public TouchSensor getLeftBumper() {
+        return leftBumper;
+    }
+
+    public TouchSensor getRightBumper() {
+        return rightBumper;
+    }
+
+    public RangeSensor getRangeSensor() {
+        return rangeSensor;
+    }
+
+    public GyroSensor getGyro() {
+        return gyro;
+    }
+
+    public Speaker getSpeaker() {
+        return speaker;
+    }
+
+    public Display getDisplay() {
+        return display;
+    }
+
+    public Buttons getButtons() {
+        return buttons;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Clean up method.
+     */
+    public void close() {
+        lTouchSensor.close();
+        rTouchSensor.close();
+        uSonicSensor.close();
+        gyroSensor  .close();
+    }
+
+    public void exit(int status) {
+        System.exit(status);
+    }
+}
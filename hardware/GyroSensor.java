@@ -0,0 +1,14 @@
+package hardware;
+
+/**
+ * Gyroscope.
+ */
+public interface GyroSensor {
+    /**
+     * Returns the angle turned since the last reset.
+     * @return degrees
+     */
+    float getAngle();
+    
+    void reset();
+}
@@ -0,0 +1,51 @@
+package hardware;
+
+/**
+ * Everything the robot uses from the brick: pilot, sonar motor, sensors, speaker, screen and buttons.
+ * EV3Hardware is the real brick (leJOS), SimulatedHardware a simulated arena, so the behaviours, planners
+ * and network stack can run on any machine.
+ */
+public interface Hardware {
+    Pilot getPilot();
+    
+    /**
+     * Returns the motor turning the ultrasonic sensor.
+     * @return
+     */
+    Motor getScanMotor();
+    
+    TouchSensor getLeftBumper();
+    
+    TouchSensor getRightBumper();
+    
+    /**
+     * Returns the ultrasonic sensor.
+     * @return
+     */
+    RangeSensor getRangeSensor();
+    
+    GyroSensor getGyro();
+    
+    Speaker getSpeaker();
+    
+    Display getDisplay();
+    
+    Buttons getButtons();
+    
+    /**
+     * Returns the clock all waits and timings go through.
+     * @return
+     */
+    Clock getClock();
+    
+    /**
+     * Releases the sensors.
+     */
+    void close();
+    
+    /**
+     * Ends the program (the simulation only stops the robot, it never exits the JVM).
+     * @param status
+     */
+    void exit(int status);
+}
@@ -0,0 +1,29 @@
+package hardware;
+
+/**
+ * Regulated motor (turns the ultrasonic sensor). Angles in degrees.
+ */
+public interface Motor {
+    /**
+     * @param angle degrees (positive turns the sensor to the left)
+     * @param immediateReturn return straight away instead of when the rotation is over
+     */
+    void rotate(int angle, boolean immediateReturn);
+    
+    boolean isMoving();
+    
+    /**
+     * Blocks until the rotation is over, without polling the motor.
+     * @param cancel ends the wait early when cancelled (null waits for the rotation)
+     * @return false if the wait ended before the rotation was over
+     */
+    boolean waitComplete(CancelToken cancel);
+    
+    void stop();
+    
+    /**
+     * Returns the angle turned since the start (degrees).
+     * @return
+     */
+    int getTachoCount();
+}
@@ -0,0 +1,54 @@
+package hardware;
+import lejos.robotics.navigation.Pose;
+
+/**
+ * Differential pilot with odometry. Distances in cm, angles in degrees (positive turns the map angle 
+ * up, like the gyro).
+ */
+public interface Pilot {
+    /**
+     * Drives straight (backwards if the distance is negative).
+     * @param distance cm
+     * @param immediateReturn return straight away instead of when the move is over
+     */
+    void travel(double distance, boolean immediateReturn);
+    
+    /**
+     * Turns in place.
+     * @param angle degrees
+     * @param immediateReturn return straight away instead of when the move is over
+     */
+    void rotate(double angle, boolean immediateReturn);
+    
+    void stop();
+    
+    boolean isMoving();
+    
+    /**
+     * Blocks until the move is over, without polling the pilot.
+     * @param cancel ends the wait early when cancelled (null waits for the move)
+     * @return false if the wait ended before the move was over
+     */
+    boolean waitComplete(CancelToken cancel);
+    
+    /**
+     * @param speed cm/s
+     */
+    void setLinearSpeed(double speed);
+    
+    /**
+     * @param speed degrees/s
+     */
+    void setAngularSpeed(double speed);
+    
+    /**
+     * @param acceleration degrees/s/s
+     */
+    void setAngularAcceleration(double acceleration);
+    
+    /**
+     * Returns the pose as estimated by odometry.
+     * @return
+     */
+    Pose getPose();
+}
@@ -0,0 +1,12 @@
+package hardware;
+
+/**
+ * Ultrasonic distance sensor.
+ */
+public interface RangeSensor {
+    /**
+     * Returns the distance to the closest obstacle in front of the sensor.
+     * @return m (infinity if there is nothing in range)
+     */
+    float getDistance();
+}
@@ -0,0 +1,89 @@
+package hardware;
+import java.util.Random;
+
+/**
+ * Ground truth of a simulated arena: a grid of square cells, each either free or blocked, surrounded by walls.
+ * Positions are in cm from the bottom left corner, angles are map angles (0 up (+y), 90 right (+x)).
+ */
+public class SimulatedArena {
+    private static final double STEP = 0.25; // cm, resolution of the ray casts
+
+    public final int WIDTH;
+    public final int HEIGHT;
+    public final float CELL_SIZE; // cm
+
+    private final boolean[] blocked;
+
+    /**
+     * Creates an arena without blocks.
+     * @param w cells
+     * @param h cells
+     * @param cellSize cm
+     */
+    public SimulatedArena( int w, int h, float cellSize ) {
+        this.WIDTH     = w;
+        this.HEIGHT    = h;
+        this.CELL_SIZE = cellSize;
+        this.blocked   = new boolean[w * h];
+    }
+
+    /**
+     * Creates an arena with random blocks (repeatable for a seed), the start cell (0,0) is always free.
+     * @param w cells
+     * @param h cells
+     * @param cellSize cm
+     * @param blocks share of blocked cells
+     * @param seed
+     * @return
+     */
+    public static SimulatedArena random( int w, int h, float cellSize, float blocks, long seed ) {
+        SimulatedArena arena = new SimulatedArena(w, h, cellSize);
+        Random rnd           = new Random(seed);
+
+        for (int x = 0; x < w; x++)
+            for (int y = 0; y < h; y++)
+                arena.setBlocked(x, y, (x != 0 || y != 0) && rnd.nextFloat() < blocks);
+
+        return arena;
+    }
+
+    public void setBlocked( int x, int y, boolean b ) {
+        blocked[x * HEIGHT + y] = b;
+    }
+
+    public boolean isBlocked( int x, int y ) {
+        return blocked[x * HEIGHT + y];
+    }
+
+    /**
+     * Returns if a point is inside a block or outside of the walls.
+     * @param x cm
+     * @param y cm
+     * @return
+     */
+    public boolean isSolid( double x, double y ) {
+        if ( x < 0 || y < 0 || x >= WIDTH * CELL_SIZE || y >= HEIGHT * CELL_SIZE )
+            return true;
+
+        return blocked[(int) (x / CELL_SIZE) * HEIGHT + (int) (y / CELL_SIZE)];
+    }
+
+    /**
+     * Returns the distance from a point to the first block or wall in a direction.
+     * @param x cm
+     * @param y cm
+     * @param angle map angle (degrees)
+     * @param max cm, returned if nothing is closer
+     * @return cm
+     */
+    public double castRay( double x, double y, double angle, double max ) {
+        double dx = Math.sin(Math.toRadians(angle));
+        double dy = Math.cos(Math.toRadians(angle));
+
+        for (double d = 0; d < max; d += STEP)
+            if ( isSolid(x + d * dx, y + d * dy) )
+                return d;
+
+        return max;
+    }
+}
@@ -0,0 +1,587 @@
+package hardware;
+import java.util.Random;
+
+import lejos.robotics.navigation.Pose;
+
+/**
+ * Simulated robot in a SimulatedArena. On the wall clock moves take as long as they would on the brick,
+ * on a VirtualClock polling a running move jumps to its end (see Simulator). Waiting for a move blocks on
+ * the monitor of the hardware until the move is over, it is stopped or the wait is cancelled.
+ *
+ * The robot starts in the centre of cell (0,0) facing up. Moves are not stepped by a thread, the pose is
+ * worked out from the time elapsed since the move started whenever something asks for it. Driving stops
+ * when a bumper touches a block or a wall (the bumper then reads pressed), turning in place never collides.
+ * The ultrasonic sensor measures from the centre of the robot in the direction of the sonar motor.
+ * Noise (gaussian, repeatable for a seed) can be added to the sonar readings and to how far moves really
+ * go, odometry and the gyro report the moves as commanded/as turned.
+ */
+public class SimulatedHardware implements Hardware {
+    public static final float MAX_RANGE         = 255;  // cm, further readings are infinity (like the EV3 sensor)
+    public static final double BUMPER_FORWARD   = 9;    // cm from the centre to the bumpers
+    public static final double BUMPER_SIDE      = 5;    // cm from the centre line to each bumper
+    public static final double REAR             = 9;    // cm from the centre to the back
+    public static final double CONTACT          = 0.5;  // cm, bumpers closer than this to a block are pressed
+    public static final double SCAN_MOTOR_SPEED = 360;  // degrees/s
+
+    private static final int MOVE_NONE   = 0;
+    private static final int MOVE_TRAVEL = 1;
+    private static final int MOVE_ROTATE = 2;
+
+    private final SimulatedArena arena;
+    private final Random rnd;
+    private final Clock clock;
+
+    // noise (standard deviations)
+    private double rangeNoise;  // cm
+    private double travelNoise; // share of the distance
+    private double rotateNoise; // share of the angle
+
+    // true pose (cm, map angle) and odometry (cm from the start, map angle)
+    private double x, y, heading;
+    private double odoX, odoY, odoHeading;
+    private double gyroZero;
+
+    // current move, the pose at its start and how far it goes
+    private int move = MOVE_NONE;
+    private long moveStart;        // ns
+    private double moveDuration;   // s
+    private double moveCommanded;  // cm or degrees
+    private double moveActual;     // cm or degrees
+    private double moveLimit;      // share of the move possible before a bumper touches
+    private double baseX, baseY, baseHeading, baseOdoX, baseOdoY, baseOdoHeading;
+
+    private double linearSpeed  = 10; // cm/s
+    private double angularSpeed = 90; // degrees/s
+
+    // sonar motor
+    private double tacho;
+    private double motorBase, motorTarget;
+    private long motorStart;
+    private boolean motorMoving;
+
+    // statistics
+    private int rotations;    // rotations commanded
+    private int collisions;   // travels stopped by a bumper
+    private double travelled; // cm
+
+    private boolean exited;
+    private int exitStatus;
+
+    private final Pilot pilot;
+    private final Motor scanMotor;
+    private final TouchSensor leftBumper, rightBumper;
+    private final RangeSensor rangeSensor;
+    private final GyroSensor gyro;
+    private final Speaker speaker;
+    private final Display display;
+    private final Buttons buttons;
+
+    /**
+     * Simulated robot running in real time.
+     * @param arena
+     * @param seed seed of the noise
+     */
+    public SimulatedHardware( SimulatedArena arena, long seed ) {
+        this(arena, seed, new SystemClock());
+    }
+
+    /**
+     * @param arena
+     * @param seed seed of the noise
+     * @param clock
+     */
+    public SimulatedHardware( SimulatedArena arena, long seed, Clock clock ) {
+        this.arena   = arena;
+        this.rnd     = new Random(seed);
+        this.clock   = clock;
+        this.x       = arena.CELL_SIZE / 2;
+        this.y       = arena.CELL_SIZE / 2;
+
+        pilot = new Pilot() {
+            public void travel(double distance, boolean immediateReturn) { startTravel(distance); if ( !immediateReturn ) waitForMove(null); }
+            public void rotate(double angle, boolean immediateReturn)    { startRotate(angle); if ( !immediateReturn ) waitForMove(null); }
+            public void stop()                                           { stopMove(); }
+            public boolean isMoving()                                    { return isMoveRunning(); }
+            public boolean waitComplete(CancelToken cancel)              { return waitForMove(cancel); }
+            public void setLinearSpeed(double speed)                     { linearSpeed = speed; }
+            public void setAngularSpeed(double speed)                    { angularSpeed = speed; }
+            public void setAngularAcceleration(double acceleration)      { } // instant
+            public Pose getPose()                                        { return odometry(); }
+        };
+
+        scanMotor = new Motor() {
+            public void rotate(int angle, boolean immediateReturn) {
+                startMotor(angle);
+
+                if ( !immediateReturn )
+                    waitForMotor(null);
+            }
+
+            public boolean isMoving()                       { return isMotorRunning(); }
+            public boolean waitComplete(CancelToken cancel) { return waitForMotor(cancel); }
+            public void stop()         { stopMotor(); }
+            public int getTachoCount() { return readTacho(); }
+        };
+
+        leftBumper = new TouchSensor() {
+            public boolean isPressed() { return isBumperPressed(-1); }
+        };
+
+        rightBumper = new TouchSensor() {
+            public boolean isPressed() { return isBumperPressed(1); }
+        };
+
+        rangeSensor = new RangeSensor() {
+            public float getDistance() { return readRange(); }
+        };
+
+        gyro = new GyroSensor() {
+            public float getAngle() { return readGyro(); }
+            public void reset()     { resetGyro(); }
+        };
+
+        speaker = new Speaker() {
+            public void beep()           { }
+            public void twoBeeps()       { }
+            public void beepSequence()   { }
+            public void beepSequenceUp() { }
+        };
+
+        display = new Display() {
+            public void clear()                              { }
+            public void setSmallFont(boolean small)          { }
+            public void drawString(String txt, int x, int y) { }
+            public int getHeight()                           { return 128; }
+        };
+
+        buttons = new Buttons() {
+            public boolean isEscapeDown() { return false; }
+            public void waitForAnyPress() { } // nobody to press it
+        };
+    }
+
+    /**
+     * Sets the noise (standard deviations) of the sonar readings and of the moves.
+     * @param range cm
+     * @param travel share of the distance driven
+     * @param rotate share of the angle turned
+     */
+    public synchronized void setNoise( double range, double travel, double rotate ) {
+        this.rangeNoise  = range;
+        this.travelNoise = travel;
+        this.rotateNoise = rotate;
+    }
+
+    public SimulatedArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Returns the time used by the simulation (ns).
+     * @return
+     */
+    private long now() {
+        return clock.nanoTime();
+    }
+
+    private synchronized boolean waitForMove( CancelToken cancel ) {
+        if ( cancel != null )
+            cancel.setWaiter(this);
+
+        try {
+            while (isMoveRunning() && !CancelToken.isCancelled(cancel))
+                clock.waitUntil(this, moveEnd()); // woken up early by a stop or a cancel
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if ( cancel != null )
+                cancel.setWaiter(null);
+        }
+
+        return move == MOVE_NONE;
+    }
+
+    private synchronized boolean waitForMotor( CancelToken cancel ) {
+        if ( cancel != null )
+            cancel.setWaiter(this);
+
+        try {
+            while (isMotorRunning() && !CancelToken.isCancelled(cancel))
+                clock.waitUntil(this, motorEnd());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if ( cancel != null )
+                cancel.setWaiter(null);
+        }
+
+        return !motorMoving;
+    }
+
+    /**
+     * Returns when the current move will be over (ns).
+     */
+    private long moveEnd() {
+        return moveStart + (long) Math.ceil(moveDuration * moveLimit * 1e9) + 1;
+    }
+
+    /**
+     * Returns when the current rotation of the sonar motor will be over (ns).
+     */
+    private long motorEnd() {
+        return motorStart + (long) Math.ceil(Math.abs(motorTarget - motorBase) / SCAN_MOTOR_SPEED * 1e9) + 1;
+    }
+
+    /**
+     * Brings the pose up to date with the time elapsed in the current move.
+     */
+    private void update() {
+        if ( move == MOVE_NONE )
+            return;
+
+        double elapsed = (now() - moveStart) / 1e9;
+        double f       = moveDuration <= 0 ? moveLimit : Math.min(moveLimit, elapsed / moveDuration);
+
+        if ( move == MOVE_TRAVEL ) {
+            double rad = Math.toRadians(baseHeading);
+            x          = baseX + f * moveActual * Math.sin(rad);
+            y          = baseY + f * moveActual * Math.cos(rad);
+
+            double odoRad = Math.toRadians(baseOdoHeading);
+            odoX          = baseOdoX + f * moveCommanded * Math.sin(odoRad);
+            odoY          = baseOdoY + f * moveCommanded * Math.cos(odoRad);
+
+            if ( f >= moveLimit ) {
+                travelled += Math.abs(f * moveActual);
+                if ( moveLimit < 1 )
+                    collisions += 1;
+            }
+        } else {
+            heading    = baseHeading + f * moveActual;
+            odoHeading = baseOdoHeading + f * moveCommanded;
+        }
+
+        if ( f >= moveLimit )
+            move = MOVE_NONE;
+    }
+
+    private void startMove( int type, double commanded, double actual, double duration ) {
+        stopMove();
+
+        move           = type;
+        moveStart      = now();
+        moveCommanded  = commanded;
+        moveActual     = actual;
+        moveDuration   = duration;
+        moveLimit      = 1;
+        baseX          = x;
+        baseY          = y;
+        baseHeading    = heading;
+        baseOdoX       = odoX;
+        baseOdoY       = odoY;
+        baseOdoHeading = odoHeading;
+    }
+
+    private synchronized void startTravel( double distance ) {
+        double actual = distance * (1 + travelNoise * rnd.nextGaussian());
+        startMove(MOVE_TRAVEL, distance, actual, Math.abs(distance) / linearSpeed);
+
+        // stops where the robot touches something
+        double free = actual >= 0 ? freeAhead(Math.abs(actual)) : freeBehind(Math.abs(actual));
+        moveLimit   = actual == 0 ? 1 : Math.min(1, free / Math.abs(actual));
+        update();
+    }
+
+    private synchronized void startRotate( double angle ) {
+        double actual = angle * (1 + rotateNoise * rnd.nextGaussian());
+        startMove(MOVE_ROTATE, angle, actual, Math.abs(angle) / angularSpeed);
+
+        if ( angle != 0 )
+            rotations += 1;
+    }
+
+    private synchronized void stopMove() {
+        update();
+
+        if ( move == MOVE_TRAVEL ) // cut short
+            travelled += Math.hypot(x - baseX, y - baseY);
+
+        move = MOVE_NONE;
+        notifyAll();
+    }
+
+    private synchronized boolean isMoveRunning() {
+        update();
+
+        if ( move != MOVE_NONE ) {
+            clock.idleUntil(moveEnd());
+            update();
+        }
+
+        return move != MOVE_NONE;
+    }
+
+    /**
+     * Distance the robot can drive forward before a bumper touches something.
+     */
+    private double freeAhead( double max ) {
+        double rad = Math.toRadians(heading);
+        double fx  = Math.sin(rad), fy = Math.cos(rad);
+        double d   = 0;
+
+        while (d < max && !bumperTouches(x + d * fx, y + d * fy, -1) && !bumperTouches(x + d * fx, y + d * fy, 1))
+            d += 0.25;
+
+        return Math.min(d, max);
+    }
+
+    /**
+     * Distance the robot can drive backwards before its back hits something.
+     */
+    private double freeBehind( double max ) {
+        return Math.max(0, Math.min(max, arena.castRay(x, y, heading + 180, max + REAR) - REAR));
+    }
+
+    /**
+     * Returns if a bumper (-1 left, 1 right) of the robot centred on (cx, cy) touches something.
+     */
+    private boolean bumperTouches( double cx, double cy, int side ) {
+        double rad = Math.toRadians(heading);
+        double fx  = Math.sin(rad), fy = Math.cos(rad);
+        double sx  = fy * side,     sy = -fx * side; // right of the heading for side 1
+
+        double bx = cx + (BUMPER_FORWARD + CONTACT) * fx + BUMPER_SIDE * sx;
+        double by = cy + (BUMPER_FORWARD + CONTACT) * fy + BUMPER_SIDE * sy;
+
+        return arena.isSolid(bx, by);
+    }
+
+    private synchronized boolean isBumperPressed( int side ) {
+        update();
+        return bumperTouches(x, y, side);
+    }
+
+    private synchronized float readRange() {
+        update();
+        updateMotor();
+
+        double d = arena.castRay(x, y, heading - tacho, MAX_RANGE);
+        if ( d >= MAX_RANGE )
+            return Float.POSITIVE_INFINITY;
+
+        d += rangeNoise * rnd.nextGaussian();
+        return (float) Math.max(0, d) / 100; // m
+    }
+
+    private synchronized float readGyro() {
+        update();
+        return (float) (heading - gyroZero);
+    }
+
+    private synchronized void resetGyro() {
+        update();
+        gyroZero = heading;
+    }
+
+    private synchronized Pose odometry() {
+        update();
+        return new Pose((float) odoX, (float) odoY, (float) (90 - odoHeading));
+    }
+
+    private void updateMotor() {
+        if ( !motorMoving )
+            return;
+
+        double elapsed = (now() - motorStart) / 1e9;
+        double turned  = elapsed * SCAN_MOTOR_SPEED;
+
+        if ( turned >= Math.abs(motorTarget - motorBase) ) {
+            tacho       = motorTarget;
+            motorMoving = false;
+        } else {
+            tacho = motorBase + Math.signum(motorTarget - motorBase) * turned;
+        }
+    }
+
+    private synchronized void startMotor( int angle ) {
+        updateMotor();
+
+        motorBase   = tacho;
+        motorTarget = tacho + angle;
+        motorStart  = now();
+        motorMoving = angle != 0;
+    }
+
+    private synchronized void stopMotor() {
+        updateMotor();
+        motorMoving = false;
+        notifyAll();
+    }
+
+    private synchronized boolean isMotorRunning() {
+        updateMotor();
+
+        if ( motorMoving ) {
+            clock.idleUntil(motorEnd());
+            updateMotor();
+        }
+
+        return motorMoving;
+    }
+
+    private synchronized int readTacho() {
+        updateMotor();
+        return (int) Math.round(tacho);
+    }
+
+    /**
+     * Returns the true x of the centre of the robot (cm).
+     * @return
+     */
+    public synchronized double getX() {
+        update();
+        return x;
+    }
+
+    /**
+     * Returns the true y of the centre of the robot (cm).
+     * @return
+     */
+    public synchronized double getY() {
+        update();
+        return y;
+    }
+
+    /**
+     * Returns the true heading of the robot (map angle, degrees).
+     * @return
+     */
+    public synchronized double getHeading() {
+        update();
+        return heading;
+    }
+
+    public Pilot getPilot() {
+        return pilot;
+    }
+
+    public Motor getScanMotor() {
+        return scanMotor;
+    }
+
+    public TouchSensor getLeftBumper() {
+        return leftBumper;
+    }
+
+    public TouchSensor getRightBumper() {
+        return rightBumper;
+    }
+
+    public RangeSensor getRangeSensor() {
+        return rangeSensor;
+    }
+
+    public GyroSensor getGyro() {
+        return gyro;
+    }
+
+    public Speaker getSpeaker() {
+        return speaker;
+    }
+
+    public Display getDisplay() {
+        return display;
+    }
+
+    public Buttons getButtons() {
+        return buttons;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Returns the number of rotations the pilot was asked for.
+     * @return
+     */
+    public synchronized int getRotations() {
+        return rotations;
+    }
+
+    /**
+     * Returns the number of travels stopped by a bumper touching something.
+     * @return
+     */
+    public synchronized int getCollisions() {
+        return collisions;
+    }
+
+    /**
+     * Returns how far the robot really drove (cm).
+     * @return
+     */
+    public synchronized double getTravelled() {
+        update();
+        return travelled;
+    }
+
+    public void close() {
+        // nothing to release
+    }
+
+    /**
+     * Stops the robot and ends the calling thread (the brick is off) by throwing an ExitException,
+     * waitForExit() returns the status.
+     */
+    public void exit(int status) {
+        stopMove();
+        stopMotor();
+
+        synchronized (this) {
+            exited     = true;
+            exitStatus = status;
+            notifyAll();
+        }
+
+        throw new ExitException(status);
+    }
+
+    /**
+     * Waits for the program to exit.
+     * @param timeout ms (0 waits forever)
+     * @return the exit status, null if it didn't exit in time
+     * @throws InterruptedException
+     */
+    public synchronized Integer waitForExit( long timeout ) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+
+        while (!exited) {
+            long left = timeout == 0 ? 0 : end - System.currentTimeMillis();
+            if ( timeout != 0 && left <= 0 )
+                return null;
+
+            wait(left);
+        }
+
+        return exitStatus;
+    }
+
+    public synchronized boolean hasExited() {
+        return exited;
+    }
+
+    /**
+     * Thrown by exit() to unwind the thread that ended the program.
+     */
+    public static class ExitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public final int status;
+
+        public ExitException( int status ) {
+            super("exit " + status);
+            this.status = status;
+        }
+    }
+}
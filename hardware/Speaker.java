@@ -0,0 +1,14 @@
+package hardware;
+
+/**
+ * Sounds played by the behaviours.
+ */
+public interface Speaker {
+    void beep();
+    
+    void twoBeeps();
+    
+    void beepSequence();
+    
+    void beepSequenceUp();
+}
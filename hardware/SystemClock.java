@@ -0,0 +1,51 @@
+package hardware;
+
+/**
+ * The wall clock, optionally sped up (e.g. to run a simulated robot in real time but faster).
+ */
+public class SystemClock implements Clock {
+    private final double speed;                                // clock seconds per real second
+    private final long originNanos  = System.nanoTime();
+    private final long originMillis = System.currentTimeMillis();
+
+    public SystemClock() {
+        this(1);
+    }
+
+    /**
+     * @param speed how many times faster than real time the clock runs
+     */
+    public SystemClock(double speed) {
+        if ( !(speed > 0) )
+            throw new IllegalArgumentException("Clock speed must be positive: " + speed);
+
+        this.speed = speed;
+    }
+
+    public long currentTimeMillis() {
+        return originMillis + (long) ((System.currentTimeMillis() - originMillis) * speed);
+    }
+
+    public long nanoTime() {
+        return originNanos + (long) ((System.nanoTime() - originNanos) * speed);
+    }
+
+    public void sleep(long ms) throws InterruptedException {
+        Thread.sleep((long) Math.ceil(ms / speed));
+    }
+
+    public void idleUntil(long nanos) {
+        // the caller keeps polling
+    }
+
+    public void waitUntil(Object monitor, long nanos) throws InterruptedException {
+        long ms = (long) ((nanos - nanoTime()) / 1000000 / speed) + 1;
+        
+        if ( ms > 0 )
+            monitor.wait(ms);
+    }
+
+    public boolean isWallClock() {
+        return speed == 1;
+    }
+}
@@ -0,0 +1,8 @@
+package hardware;
+
+/**
+ * Bumper.
+ */
+public interface TouchSensor {
+    boolean isPressed();
+}
@@ -0,0 +1,65 @@
+package hardware;
+
+/**
+ * Simulated time for a discrete-event simulation: time only moves when someone waits. Sleeping jumps
+ * forward by the delay, waiting for the end of a move jumps to the end of the move, so a lap takes as
+ * long as the computation in it.
+ * A listener is told after every jump (the simulator checks the behaviours there, like the Arbitrator
+ * thread would while the robot waits).
+ * Meant for a single thread, the clock never blocks.
+ */
+public class VirtualClock implements Clock {
+    private long now; // ns
+    private Runnable listener;
+
+    public VirtualClock() {
+        this.now = 0;
+    }
+
+    /**
+     * Sets what to run after the time moved forward.
+     * @param listener (null for nothing)
+     */
+    public void setListener( Runnable listener ) {
+        this.listener = listener;
+    }
+
+    public long currentTimeMillis() {
+        return now / 1000000;
+    }
+
+    public long nanoTime() {
+        return now;
+    }
+
+    public void sleep( long ms ) {
+        advance(ms * 1000000);
+    }
+
+    public void idleUntil( long nanos ) {
+        if ( nanos > now )
+            advance(nanos - now);
+    }
+
+    public void waitUntil( Object monitor, long nanos ) {
+        idleUntil(nanos);
+    }
+
+    public boolean isWallClock() {
+        return false;
+    }
+
+    /**
+     * Moves the time forward.
+     * @param nanos
+     */
+    public void advance( long nanos ) {
+        if ( nanos <= 0 )
+            return;
+
+        now += nanos;
+
+        if ( listener != null )
+            listener.run();
+    }
+}
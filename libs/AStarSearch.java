@@ -1,87 +1,242 @@
 package libs;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.BitSet;
 
 /**
  * A class that is used to calculate a
- * path between two AStarNodes by using
+ * path between two nodes of an IntGraph by using
  * A* search algorithm.
+ * 
+ * The search itself holds no state: everything a query needs (the open list as a binary heap of node ids with 
+ * decrease-key, costs and parents in arrays indexed by node id) lives in a Workspace. There is no closed list: 
+ * a node reached in this query but no longer in the heap is closed, and is opened again if a cheaper path to it 
+ * turns up (so heuristics that aren't consistent still give the cheapest path). 
+ * A workspace can be reused for many queries without clearing anything, and several workspaces can search 
+ * the same graph in parallel as long as the graph is not changed meanwhile.
+ * Single goal searches on a PrunedGraph only look at the successors it gives (e.g. jump points).
  */
-class AStarSearch {
-  public static class PriorityList extends LinkedList {
-      public void add( Comparable object ) {
-          for (int i=0; i<size(); i++) {
-              if (object.compareTo(get(i)) <= 0) {
-                  add(i, object);
-                  return;
-              }
-          }
-          addLast(object);
-      }
-  }
+public class AStarSearch {
+    /**
+     * Per query state of a search, make one per thread/planner.
+     */
+    public static class Workspace implements IntGraph.NeighbourVisitor {
+        private final IntGraph graph;
+        private final PrunedGraph pruned; // graph, if it can prune successors (null otherwise)
+        
+        private final float[] costFromStart;
+        private final float[] totalCost;     // cost from start + estimated cost to goal
+        private final int[] pathParent;
+        private final long[] openOrder;      // when a node was opened (ties go to the most recent one)
+        private final int[] searchStamp;     // search in which a node was last reached
+        
+        private final int[] heap;            // open list
+        private final int[] heapPos;         // position of a node in the heap (-1 = not in it)
+        private int heapSize;
+        
+        private int searchId;
+        private long openCounter;
+        private int expanded;
+        
+        // node being expanded and goal of the current query (-1 when searching for a set of goals)
+        private int current;
+        private int goal;
+        
+        public Workspace( IntGraph graph ) {
+            int n = graph.size();
+            
+            this.graph         = graph;
+            this.pruned        = graph instanceof PrunedGraph ? (PrunedGraph) graph : null;
+            this.costFromStart = new float[n];
+            this.totalCost     = new float[n];
+            this.pathParent    = new int[n];
+            this.openOrder     = new long[n];
+            this.searchStamp   = new int[n];
+            this.heap          = new int[n];
+            this.heapPos       = new int[n];
+        }
+        
+        /**
+         * Returns the number of nodes expanded by the last query.
+         * @return
+         */
+        public int getExpanded() {
+            return expanded;
+        }
+        
+        private int[] search( int start, int goal, BitSet goals ) {
+            this.searchId += 1;
+            this.heapSize  = 0;
+            this.expanded  = 0;
+            this.goal      = goal;
+            
+            costFromStart[start] = 0;
+            totalCost[start]     = goal == -1 ? 0 : graph.heuristic(start, goal);
+            pathParent[start]    = -1;
+            searchStamp[start]   = searchId;
+            push(start);
 
-  protected List constructPath( AStarNode node ) {
-      LinkedList path = new LinkedList();
+            while (heapSize > 0) {
+                int node = pop();
+                
+                // construct the path from start to goal
+                if ( node == goal || (goals != null && goals.get(node)) )
+                    return constructPath(node);
+                
+                expanded += 1;
+                
+                current = node;
+                if ( pruned != null && goal != -1 )
+                    pruned.successors(node, pathParent[node], goal, this);
+                else
+                    graph.neighbours(node, this);
+            }
 
-      while (node.pathParent != null) {
-          path.addFirst(node);
-          node = node.pathParent;
-      }
+            // no path found
+            return null;
+        }
+        
+        /**
+         * Relaxes the edge from the node being expanded to a neighbour.
+         */
+        @Override
+        public void visit( int neighbour ) {
+            boolean isReached = searchStamp[neighbour] == searchId;
+            float cost        = costFromStart[current] + graph.cost(current, neighbour);
 
-      return path;
-  }
+            // check if the neighbour node has not been
+            // traversed or if a shorter path to this
+            // neighbour node is found.
+            
+            if ( !isReached || cost < costFromStart[neighbour] ) {
+                pathParent[neighbour]    = current;
+                costFromStart[neighbour] = cost;
+                totalCost[neighbour]     = goal == -1 ? cost : cost + graph.heuristic(neighbour, goal);
+                searchStamp[neighbour]   = searchId;
+                
+                if ( isReached && heapPos[neighbour] >= 0 ) {
+                    siftUp(heapPos[neighbour]); // decrease-key
+                } else {
+                    push(neighbour);
+                }
+            }
+        }
+        
+        private int[] constructPath( int node ) {
+            int length = 0;
+            for (int n = node; pathParent[n] != -1; n = pathParent[n])
+                length++;
+            
+            int[] path = new int[length];
+            for (int k = length - 1; k >= 0; k--) {
+                path[k] = node;
+                node    = pathParent[node];
+            }
+            
+            return path;
+        }
+        
+        /**
+         * Returns if node a should be expanded before node b.
+         */
+        private boolean before( int a, int b ) {
+            if ( totalCost[a] != totalCost[b] )
+                return totalCost[a] < totalCost[b];
+            
+            return openOrder[a] > openOrder[b];
+        }
+        
+        private void siftUp( int i ) {
+            int node = heap[i];
+            
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if ( !before(node, heap[parent]) )
+                    break;
+                
+                heap[i]          = heap[parent];
+                heapPos[heap[i]] = i;
+                i                = parent;
+            }
+            
+            heap[i]       = node;
+            heapPos[node] = i;
+        }
+        
+        private void siftDown( int i ) {
+            int node = heap[i];
+            
+            while (true) {
+                int child = 2 * i + 1;
+                if ( child >= heapSize )
+                    break;
+                
+                if ( child + 1 < heapSize && before(heap[child + 1], heap[child]) )
+                    child += 1;
+                
+                if ( !before(heap[child], node) )
+                    break;
+                
+                heap[i]          = heap[child];
+                heapPos[heap[i]] = i;
+                i                = child;
+            }
+            
+            heap[i]       = node;
+            heapPos[node] = i;
+        }
+        
+        private void push( int node ) {
+            openOrder[node] = ++openCounter;
+            heap[heapSize]  = node;
+            siftUp(heapSize++);
+        }
+        
+        private int pop() {
+            int node      = heap[0];
+            heapPos[node] = -1;
+            
+            if ( --heapSize > 0 ) {
+                heap[0] = heap[heapSize];
+                siftDown(0);
+            }
+            
+            return node;
+        }
+    }
+    
+    private final IntGraph graph;
+    
+    public AStarSearch( IntGraph graph ) {
+        this.graph = graph;
+    }
+    
+    /**
+     * Returns a new workspace for searches over this graph.
+     * @return
+     */
+    public Workspace newWorkspace() {
+        return new Workspace(graph);
+    }
   
-  public List findPath( AStarNode startNode, AStarNode goalNode ) {
-      PriorityList openList = new PriorityList();
-      LinkedList closedList = new LinkedList();
-
-      startNode.costFromStart       = 0;
-      startNode.estimatedCostToGoal = startNode.getEstimatedCost(goalNode);
-      startNode.pathParent          = null;
-      
-      openList.add(startNode);
-
-      while (!openList.isEmpty()) {
-          WaypointResolver.Node node1 = (WaypointResolver.Node)startNode;
-          WaypointResolver.Node node2 = (WaypointResolver.Node)goalNode;
-          
-          AStarNode node = (AStarNode)openList.removeFirst();
-          
-          // construct the path from start to goal
-          if (node == goalNode)
-              return constructPath(goalNode);
-
-          List neighbours = node.getNeighbours();
-
-          for (int i=0; i<neighbours.size(); i++) {
-              AStarNode neighbourNode = (AStarNode)neighbours.get(i);
-              boolean isOpen         = openList.contains(neighbourNode);
-              boolean isClosed       = closedList.contains(neighbourNode);
-              
-              float costFromStart    = node.costFromStart + node.getCost(neighbourNode);
-
-              // check if the neighbour node has not been
-              // traversed or if a shorter path to this
-              // neighbour node is found.
-
-              if ((!isOpen && !isClosed) || costFromStart < neighbourNode.costFromStart){
-
-                  neighbourNode.pathParent          = node;
-                  neighbourNode.costFromStart       = costFromStart;
-                  neighbourNode.estimatedCostToGoal = neighbourNode.getEstimatedCost(goalNode);
-                  
-                  if (isClosed) 
-                      closedList.remove(neighbourNode);
-                  
-                  if (!isOpen)
-                      openList.add(neighbourNode);
-              }
-          }
-
-          closedList.add(node);
-      }
-
-      // no path found
-      return null;
-  }
-}
\ No newline at end of file
+    /**
+     * Finds the cheapest path between two nodes.
+     * @param start
+     * @param goal
+     * @param workspace
+     * @return ids of the nodes on the path (start excluded), null if the goal can't be reached
+     */
+    public int[] findPath( int start, int goal, Workspace workspace ) {
+        return workspace.search(start, goal, null);
+    }
+    
+    /**
+     * Finds the path to the closest node (by path cost) of a set of goals in a single pass.
+     * This is a Dijkstra search (no heuristic) that stops at the first goal taken from the open list.
+     * @param start
+     * @param goals ids of the goal nodes
+     * @param workspace
+     * @return path to the closest goal (empty if the start is a goal), or null if no goal can be reached
+     */
+    public int[] findPathToAny( int start, BitSet goals, Workspace workspace ) {
+        return workspace.search(start, -1, goals);
+    }
+}
@@ -0,0 +1,56 @@
+package libs;
+
+/**
+ * Change log over a plain int array (slot = version % size), for a grid written by a single thread.
+ */
+public class ArrayChangeLog implements ChangeLog {
+    private static final long serialVersionUID = 3619457082305774419L;
+    
+    private final int[] log;
+    private long version;
+    
+    /**
+     * @param size number of changes kept (power of 2)
+     */
+    public ArrayChangeLog( int size ) {
+        this.log = new int[size];
+    }
+    
+    /**
+     * @param log
+     * @param version
+     */
+    ArrayChangeLog( int[] log, long version ) {
+        this.log     = log;
+        this.version = version;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public void add( int index ) {
+        log[(int) version & (log.length - 1)] = index;
+        version++;
+    }
+    
+    public int[] changesSince( long since ) {
+        long current = version;
+        
+        if ( since >= current )
+            return new int[0];
+        
+        if ( current - since > log.length )
+            return null;
+        
+        IndexSet changed = new IndexSet();
+        for (long v = since; v < current; v++)
+            changed.add(log[(int) v & (log.length - 1)]);
+        
+        return changed.toSortedArray();
+    }
+    
+    public ChangeLog copy() {
+        return new ArrayChangeLog(log.clone(), version);
+    }
+}
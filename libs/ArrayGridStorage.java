@@ -0,0 +1,84 @@
+package libs;
+import java.util.BitSet;
+
+/**
+ * Grid storage backed by flat primitive arrays indexed by (x * HEIGHT + y).
+ * Every cell is allocated up front, best for small (competition sized) arenas.
+ */
+public class ArrayGridStorage implements GridStorage {
+    private static final long serialVersionUID = -5630912880290924719L;
+    
+    private final int HEIGHT;
+    
+    private int[] M;         // meaningful observation count (per cell)
+    private int[] C;         // overall observation count (per cell)
+    private double[] P;      // cached probability of occupancy (per cell, updated on observation)
+    private BitSet visited;  // if a cell has been visited or not by the robot
+    private BitSet scanned;  // if a cell has been observed at least once
+    
+    private ArrayGridStorage( ArrayGridStorage other ) {
+        this.HEIGHT  = other.HEIGHT;
+        this.M       = other.M.clone();
+        this.C       = other.C.clone();
+        this.P       = other.P.clone();
+        this.visited = (BitSet) other.visited.clone();
+        this.scanned = (BitSet) other.scanned.clone();
+    }
+    
+    public ArrayGridStorage( int w, int h ) {
+        this.HEIGHT  = h;
+        this.M       = new int[w * h];
+        this.C       = new int[w * h];
+        this.P       = new double[w * h];
+        this.visited = new BitSet(w * h);
+        this.scanned = new BitSet(w * h);
+    }
+    
+    public int getM( int x, int y ) {
+        return M[x * HEIGHT + y];
+    }
+    
+    public int getC( int x, int y ) {
+        return C[x * HEIGHT + y];
+    }
+    
+    public double getP( int x, int y ) {
+        return P[x * HEIGHT + y];
+    }
+    
+    public boolean isVisited( int x, int y ) {
+        return visited.get(x * HEIGHT + y);
+    }
+    
+    public boolean isScanned( int x, int y ) {
+        return scanned.get(x * HEIGHT + y);
+    }
+    
+    public void store( int x, int y, int m, int c, double p ) {
+        int i = x * HEIGHT + y;
+        
+        M[i] = m;
+        C[i] = c;
+        P[i] = p;
+        
+        scanned.set(i);
+    }
+    
+    public void setVisited( int x, int y, boolean b ) {
+        visited.set(x * HEIGHT + y, b);
+    }
+    
+    public int countVisited() {
+        return visited.cardinality();
+    }
+    
+    public void forEachScanned( CellVisitor visitor ) {
+        // walk scanned cells in index (row) order
+        for (int i = scanned.nextSetBit(0); i >= 0; i = scanned.nextSetBit(i + 1))
+            visitor.visit(i / HEIGHT, i % HEIGHT);
+    }
+    
+    public GridStorage copy() {
+        return new ArrayGridStorage(this);
+    }
+}
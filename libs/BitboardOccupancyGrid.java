@@ -0,0 +1,150 @@
+package libs;
+import java.util.ArrayList;
+
+/**
+ * Occupancy grid for small arenas (up to 64 cells, e.g. the 7x6 competition arena).
+ * Next to the usual cell storage it keeps the blocked, free, visited and scanned cells as
+ * long bit masks (bit = cell index), so neighbour sets, frontier extraction and map completion
+ * checks are only a few shifts and bit counts.
+ */
+public class BitboardOccupancyGrid extends OccupancyGrid {
+    private static final long serialVersionUID = 3090562711574802137L;
+    public static final int MAX_CELLS = 64;
+    
+    private final long ALL;       // every cell of the grid
+    private final long NOT_TOP;   // cells with y < HEIGHT-1
+    private final long NOT_BOTTOM;// cells with y > 0
+    
+    private long blocked;  // Pr >= free cell determinant
+    private long free;     // scanned and Pr < free cell determinant
+    private long visited;
+    private long scanned;
+    
+    public BitboardOccupancyGrid(int w, int h) {
+        this(w, h, new CountingOccupancyModel());
+    }
+    
+    public BitboardOccupancyGrid(int w, int h, OccupancyModel model) {
+        super(w, h, model);
+        
+        if ( w * h > MAX_CELLS )
+            throw new IllegalArgumentException("Bitboard grid only supports up to " + MAX_CELLS + " cells");
+        
+        long all = 0, top = 0, bottom = 0;
+        for (int x = 0; x < w; x++) {
+            for (int y = 0; y < h; y++) {
+                long bit = 1L << index(x, y);
+                all |= bit;
+                top    |= y == h - 1 ? bit : 0;
+                bottom |= y == 0 ? bit : 0;
+            }
+        }
+        
+        this.ALL        = all;
+        this.NOT_TOP    = all & ~top;
+        this.NOT_BOTTOM = all & ~bottom;
+    }
+    
+    @Override
+    protected void cellChanged(int x, int y) {
+        super.cellChanged(x, y);
+        
+        GridStorage s = getStorage();
+        long bit      = 1L << index(x, y);
+        boolean isBlocked = isBlocked(s.getP(x, y));
+        
+        blocked = isBlocked ? blocked | bit : blocked & ~bit;
+        free    = s.isScanned(x, y) && !isBlocked ? free | bit : free & ~bit;
+        visited = s.isVisited(x, y) ? visited | bit : visited & ~bit;
+        scanned = s.isScanned(x, y) ? scanned | bit : scanned & ~bit;
+    }
+    
+    /**
+     * Returns the set of cells matching a neighbour filter.
+     * @param filter
+     * @return
+     */
+    private long cellsMatching(int filter) {
+        switch (filter) {
+            case NEIGHBOUR_BLOCKED:
+                return blocked;
+            case NEIGHBOUR_UNVISITED:
+                return ALL & ~visited;
+            case NEIGHBOUR_FREE_UNVISITED:
+                return ALL & ~blocked & ~visited;
+            default:
+                return ALL;
+        }
+    }
+    
+    @Override
+    public int getNeighbourMask(int x, int y, int filter) {
+        long cells = cellsMatching(filter);
+        long bit   = 1L << index(x, y);
+        int mask   = 0;
+        
+        if ( ((bit & NOT_TOP) << 1 & cells) != 0 )
+            mask |= DIR_UP;
+        if ( ((bit & NOT_BOTTOM) >>> 1 & cells) != 0 )
+            mask |= DIR_DOWN;
+        if ( x > 0 && (bit >>> HEIGHT & cells) != 0 )
+            mask |= DIR_LEFT;
+        if ( x < WIDTH - 1 && (bit << HEIGHT & cells) != 0 )
+            mask |= DIR_RIGHT;
+        
+        return mask;
+    }
+    
+    /**
+     * Returns the free, scanned, unvisited cells as a bit mask.
+     * @return
+     */
+    public long getFrontierBits() {
+        return free & ~visited;
+    }
+    
+    public long getBlockedBits() {
+        return blocked;
+    }
+    
+    public long getVisitedBits() {
+        return visited;
+    }
+    
+    public long getScannedBits() {
+        return scanned;
+    }
+    
+    @Override
+    public boolean isFrontier(GridCell cell) {
+        return (getFrontierBits() & (1L << index(cell.x, cell.y))) != 0;
+    }
+    
+    @Override
+    public int getFrontierSize() {
+        return Long.bitCount(getFrontierBits());
+    }
+    
+    @Override
+    public boolean isMapComplete() {
+        return getFrontierBits() == 0;
+    }
+    
+    @Override
+    public int getNumVisits() {
+        return Long.bitCount(visited);
+    }
+    
+    @Override
+    public ArrayList<GridCell> calculateScannedUnvisited() {
+        long bits = getFrontierBits();
+        ArrayList<GridCell> scanned_unvisited = new ArrayList<GridCell>(Long.bitCount(bits));
+        
+        for (; bits != 0; bits &= bits - 1) {
+            int i = Long.numberOfTrailingZeros(bits);
+            scanned_unvisited.add(getCell(i / HEIGHT, i % HEIGHT));
+        }
+        
+        return scanned_unvisited;
+    }
+}
@@ -0,0 +1,33 @@
+package libs;
+import java.io.Serializable;
+
+/**
+ * Version counter and ring buffer of the last changed cells of an occupancy grid.
+ * Readers remember a version and later ask for the cells that changed since, to update only those.
+ */
+public interface ChangeLog extends Serializable {
+    /**
+     * Returns the version, incremented on every change.
+     * @return
+     */
+    public long getVersion();
+    
+    /**
+     * Logs a change of a cell.
+     * @param index cell index (x * HEIGHT + y)
+     */
+    public void add( int index );
+    
+    /**
+     * Returns the (distinct, sorted) indices of the cells that changed since a version.
+     * @param since
+     * @return null if the log doesn't go back that far (everything must be considered changed)
+     */
+    public int[] changesSince( long since );
+    
+    /**
+     * Returns an independent copy of the log.
+     * @return
+     */
+    public ChangeLog copy();
+}
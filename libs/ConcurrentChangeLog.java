@@ -0,0 +1,78 @@
+package libs;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Change log that several threads can write to and read from without locking.
+ * A writer takes the next version, then stores the cell index in its slot together with the (low 32 bits of
+ * the) version. Readers check that tag: a slot still holding an older one is being written (the writer is
+ * between the two steps, so the reader waits for it), a newer one means it was overwritten already.
+ */
+public class ConcurrentChangeLog implements ChangeLog {
+    private static final long serialVersionUID = -2218093645726152370L;
+    
+    private final int mask;
+    private final AtomicLongArray log; // version tag << 32 | cell index
+    private final AtomicLong version;
+    
+    /**
+     * @param size number of changes kept (power of 2)
+     */
+    public ConcurrentChangeLog( int size ) {
+        this.mask    = size - 1;
+        this.log     = new AtomicLongArray(size);
+        this.version = new AtomicLong();
+        
+        for (int i = 0; i < size; i++)
+            log.set(i, (long) (i - size) << 32); // tags of versions before 0, so nothing counts as written
+    }
+    
+    public long getVersion() {
+        return version.get();
+    }
+    
+    public void add( int index ) {
+        long v = version.getAndIncrement();
+        log.lazySet((int) v & mask, v << 32 | (index & 0xFFFFFFFFL));
+    }
+    
+    public int[] changesSince( long since ) {
+        long current = version.get();
+        
+        if ( since >= current )
+            return new int[0];
+        
+        if ( current - since > mask + 1 )
+            return null;
+        
+        IndexSet changed = new IndexSet();
+        for (long v = since; v < current; v++) {
+            long entry;
+            int behind;
+            
+            while ((behind = (int) v - (int) ((entry = log.get((int) v & mask)) >>> 32)) > 0)
+                Thread.yield(); // still being written
+            
+            if ( behind < 0 ) // overwritten meanwhile
+                return null;
+            
+            changed.add((int) entry);
+        }
+        
+        return changed.toSortedArray();
+    }
+    
+    /**
+     * Copies the log into a (single threaded) ArrayChangeLog, writers must not run meanwhile.
+     * @return
+     */
+    public ChangeLog copy() {
+        long current = version.get();
+        int[] copy   = new int[mask + 1];
+        
+        for (int i = 0; i <= mask; i++)
+            copy[i] = (int) log.get(i);
+        
+        return new ArrayChangeLog(copy, current);
+    }
+}
@@ -0,0 +1,127 @@
+package libs;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Grid storage that can be read and written from several threads.
+ * Every value lives in an atomic array, so reads never lock and never see a torn probability.
+ * Writes of a single cell must still be serialised by the caller (see ConcurrentOccupancyGrid),
+ * writes of different cells can run in parallel.
+ */
+public class ConcurrentGridStorage implements GridStorage {
+    private static final long serialVersionUID = 5511740235902151227L;
+    
+    private final int HEIGHT;
+    
+    private final AtomicIntegerArray M;
+    private final AtomicIntegerArray C;
+    private final AtomicLongArray P;        // raw bits of the probabilities
+    private final AtomicLongArray visited;  // bit sets (one bit per cell)
+    private final AtomicLongArray scanned;
+    private final AtomicInteger numVisited;
+    
+    public ConcurrentGridStorage( int w, int h ) {
+        this.HEIGHT     = h;
+        this.M          = new AtomicIntegerArray(w * h);
+        this.C          = new AtomicIntegerArray(w * h);
+        this.P          = new AtomicLongArray(w * h);
+        this.visited    = new AtomicLongArray((w * h + 63) >> 6);
+        this.scanned    = new AtomicLongArray((w * h + 63) >> 6);
+        this.numVisited = new AtomicInteger();
+    }
+    
+    private ConcurrentGridStorage( ConcurrentGridStorage other ) {
+        this.HEIGHT     = other.HEIGHT;
+        this.M          = new AtomicIntegerArray(other.M.length());
+        this.C          = new AtomicIntegerArray(other.C.length());
+        this.P          = new AtomicLongArray(other.P.length());
+        this.visited    = new AtomicLongArray(other.visited.length());
+        this.scanned    = new AtomicLongArray(other.scanned.length());
+        this.numVisited = new AtomicInteger(other.numVisited.get());
+        
+        for (int i = 0; i < M.length(); i++) {
+            M.set(i, other.M.get(i));
+            C.set(i, other.C.get(i));
+            P.set(i, other.P.get(i));
+        }
+        
+        for (int i = 0; i < visited.length(); i++) {
+            visited.set(i, other.visited.get(i));
+            scanned.set(i, other.scanned.get(i));
+        }
+    }
+    
+    private static boolean getBit( AtomicLongArray bits, int i ) {
+        return (bits.get(i >> 6) & (1L << i)) != 0;
+    }
+    
+    /**
+     * Sets/clears a bit with a CAS loop (other cells share the same word).
+     * @return the previous value of the bit
+     */
+    private static boolean setBit( AtomicLongArray bits, int i, boolean b ) {
+        while (true) {
+            long old = bits.get(i >> 6);
+            long upd = b ? old | (1L << i) : old & ~(1L << i);
+            
+            if ( old == upd || bits.compareAndSet(i >> 6, old, upd) )
+                return (old & (1L << i)) != 0;
+        }
+    }
+    
+    public int getM( int x, int y ) {
+        return M.get(x * HEIGHT + y);
+    }
+    
+    public int getC( int x, int y ) {
+        return C.get(x * HEIGHT + y);
+    }
+    
+    public double getP( int x, int y ) {
+        return Double.longBitsToDouble(P.get(x * HEIGHT + y));
+    }
+    
+    public boolean isVisited( int x, int y ) {
+        return getBit(visited, x * HEIGHT + y);
+    }
+    
+    public boolean isScanned( int x, int y ) {
+        return getBit(scanned, x * HEIGHT + y);
+    }
+    
+    public void store( int x, int y, int m, int c, double p ) {
+        int i = x * HEIGHT + y;
+        
+        // ordered (not fenced) writes, the caller's lock or a reader's later get makes them visible
+        M.lazySet(i, m);
+        C.lazySet(i, c);
+        P.lazySet(i, Double.doubleToRawLongBits(p));
+        
+        setBit(scanned, i, true);
+    }
+    
+    public void setVisited( int x, int y, boolean b ) {
+        boolean was = setBit(visited, x * HEIGHT + y, b);
+        
+        if ( was != b )
+            numVisited.addAndGet(b ? 1 : -1);
+    }
+    
+    public int countVisited() {
+        return numVisited.get();
+    }
+    
+    public void forEachScanned( CellVisitor visitor ) {
+        for (int w = 0; w < scanned.length(); w++) {
+            for (long bits = scanned.get(w); bits != 0; bits &= bits - 1) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                visitor.visit(i / HEIGHT, i % HEIGHT);
+            }
+        }
+    }
+    
+    public GridStorage copy() {
+        return new ConcurrentGridStorage(this);
+    }
+}
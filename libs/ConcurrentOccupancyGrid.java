@@ -0,0 +1,163 @@
+package libs;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Occupancy grid that can be updated by several threads at once 
+ * (e.g. a background sensor thread, or several simulated robots sharing a map).
+ * 
+ * Updates of a cell take the lock of its stripe (cells are spread over a fixed number of locks),
+ * so writers of different cells rarely wait for each other. Changes are logged without locking
+ * (ConcurrentChangeLog), the frontier is behind a global lock, but writers only take it when a cell joins
+ * or leaves the frontier, which most observations don't do. Cell reads never lock, the storage is made of
+ * atomic arrays, frontier reads take the frontier lock.
+ */
+public class ConcurrentOccupancyGrid extends OccupancyGrid {
+    private static final long serialVersionUID = -6961934390618770457L;
+    public static final int DEFAULT_STRIPES = 64;
+    
+    private final ReentrantLock[] stripes;
+    private final ReentrantLock frontierLock;
+    private final boolean[] inFrontier;  // frontier membership of every cell (guarded by the cell's stripe)
+    
+    public ConcurrentOccupancyGrid(int w, int h) {
+        this(w, h, new CountingOccupancyModel(), DEFAULT_STRIPES);
+    }
+    
+    /**
+     * @param w
+     * @param h
+     * @param model
+     * @param numStripes number of cell locks (rounded up to a power of 2)
+     */
+    public ConcurrentOccupancyGrid(int w, int h, OccupancyModel model, int numStripes) {
+        super(w, h, model, new ConcurrentGridStorage(w, h), new ConcurrentChangeLog(CHANGE_LOG_SIZE));
+        
+        int n = numStripes <= 1 ? 1 : Integer.highestOneBit(numStripes - 1) << 1;
+        
+        this.stripes      = new ReentrantLock[n];
+        this.frontierLock = new ReentrantLock();
+        this.inFrontier   = new boolean[w * h];
+        
+        for (int i = 0; i < n; i++)
+            stripes[i] = new ReentrantLock();
+    }
+    
+    private ReentrantLock stripe(int x, int y) {
+        return stripes[index(x, y) & (stripes.length - 1)];
+    }
+    
+    @Override
+    protected void observe(int x, int y, boolean occupied) {
+        ReentrantLock lock = stripe(x, y);
+        
+        lock.lock();
+        try {
+            super.observe(x, y, occupied);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    protected void visit(int x, int y, boolean b) {
+        ReentrantLock lock = stripe(x, y);
+        
+        lock.lock();
+        try {
+            super.visit(x, y, b);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Called with the stripe of the cell held, so the membership flag can't change under it.
+     */
+    @Override
+    protected void updateFrontier(int x, int y) {
+        int i          = index(x, y);
+        boolean member = isFrontierCell(x, y);
+        
+        if ( member == inFrontier[i] )
+            return;
+        
+        inFrontier[i] = member;
+        
+        frontierLock.lock();
+        try {
+            super.updateFrontier(x, y);
+        } finally {
+            frontierLock.unlock();
+        }
+    }
+    
+    /**
+     * Reclassifies the cells while holding every lock (nothing can be observed half way through).
+     */
+    @Override
+    public void setFreeCellDeterminant(double p) {
+        lockAll();
+        try {
+            super.setFreeCellDeterminant(p);
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    @Override
+    public boolean isFrontier(GridCell cell) {
+        frontierLock.lock();
+        try {
+            return super.isFrontier(cell);
+        } finally {
+            frontierLock.unlock();
+        }
+    }
+    
+    @Override
+    public int getFrontierSize() {
+        frontierLock.lock();
+        try {
+            return super.getFrontierSize();
+        } finally {
+            frontierLock.unlock();
+        }
+    }
+    
+    @Override
+    public ArrayList<GridCell> calculateScannedUnvisited() {
+        frontierLock.lock();
+        try {
+            return super.calculateScannedUnvisited();
+        } finally {
+            frontierLock.unlock();
+        }
+    }
+    
+    /**
+     * Publishes a snapshot while holding every lock, so that no update is half way through.
+     * Can be called from any writer thread.
+     */
+    @Override
+    public void publishSnapshot() {
+        lockAll();
+        try {
+            super.publishSnapshot();
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    private void lockAll() {
+        for (ReentrantLock lock : stripes)
+            lock.lock();
+        frontierLock.lock();
+    }
+    
+    private void unlockAll() {
+        frontierLock.unlock();
+        for (ReentrantLock lock : stripes)
+            lock.unlock();
+    }
+}
@@ -0,0 +1,22 @@
+package libs;
+
+/**
+ * The original counting model of the grid: Pr = (M + C) / 2C.
+ * Only depends on the observation counts.
+ */
+public class CountingOccupancyModel implements OccupancyModel {
+    private static final long serialVersionUID = 6180254926316377301L;
+
+    public double update( double p, int m, int c, boolean occupied ) {
+        int dn = 2 * c;
+
+        if (dn == 0)
+            return 0;
+
+        double v = (double) (m + c) / dn;
+        v = v > 1 ? 1 : v;
+        v = v < 0 ? 0 : v;
+
+        return v;
+    }
+}
@@ -0,0 +1,328 @@
+package libs;
+import java.util.Arrays;
+
+/**
+ * Incremental shortest path planner (D* Lite) over a 4-connected grid with unit costs.
+ *
+ * The search runs backwards from a set of goal cells, so g(s) is the distance from s to the closest goal.
+ * The state is kept between calls: when cells become (un)traversable, become goals or stop being goals,
+ * and when the start (the robot) moves, only the nodes whose distance changed are expanded again.
+ *
+ * Moving into a cell costs 1 if the cell is passable, otherwise there is no edge.
+ * Cells are indexed like the occupancy grid (x*HEIGHT+y).
+ */
+public class DStarLite {
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    public final int WIDTH;
+    public final int HEIGHT;
+
+    private final boolean[] passable;
+    private final boolean[] goal;
+    private final int[] g;
+    private final int[] rhs;
+
+    // priority queue (binary heap with decrease-key) of inconsistent nodes
+    private final int[] heap;
+    private final int[] heapPos;
+    private final int[] key1;
+    private final int[] key2;
+    private int heapSize;
+
+    private final IndexSet pending; // cells changed since the last plan
+    private int start = -1;         // start of the last plan
+    private int km;                 // key modifier (sum of the heuristic distances the start moved)
+    private int expanded;           // nodes expanded by the last plan
+
+    public DStarLite( int w, int h ) {
+        int n = w * h;
+
+        this.WIDTH    = w;
+        this.HEIGHT   = h;
+        this.passable = new boolean[n];
+        this.goal     = new boolean[n];
+        this.g        = new int[n];
+        this.rhs      = new int[n];
+        this.heap     = new int[n];
+        this.heapPos  = new int[n];
+        this.key1     = new int[n];
+        this.key2     = new int[n];
+        this.pending  = new IndexSet();
+
+        reset();
+    }
+
+    /**
+     * Forgets all the search state (cell passability and goals are kept).
+     * The next plan is a full search.
+     */
+    public void reset() {
+        Arrays.fill(g, INF);
+        Arrays.fill(heapPos, -1);
+        heapSize = 0;
+        km       = 0;
+        start    = -1;
+        pending.clear();
+
+        for (int i = 0; i < rhs.length; i++) {
+            rhs[i] = goal[i] ? 0 : INF;
+            if ( goal[i] )
+                insert(i);
+        }
+    }
+
+    /**
+     * Sets if a cell can be moved into.
+     * @param i cell index
+     * @param b
+     */
+    public void setPassable( int i, boolean b ) {
+        if ( passable[i] != b ) {
+            passable[i] = b;
+            pending.add(i);
+        }
+    }
+
+    /**
+     * Sets if a cell is a goal.
+     * @param i cell index
+     * @param b
+     */
+    public void setGoal( int i, boolean b ) {
+        if ( goal[i] != b ) {
+            goal[i] = b;
+            pending.add(i);
+        }
+    }
+
+    public boolean isPassable( int i ) {
+        return passable[i];
+    }
+
+    public boolean isGoal( int i ) {
+        return goal[i];
+    }
+
+    /**
+     * Returns the distance of a cell to the closest goal as of the last plan (-1 if unreachable).
+     * Only exact for cells on the planned path (and the ones the search had to look at).
+     * @param i
+     * @return
+     */
+    public int getDistance( int i ) {
+        return g[i] >= INF ? -1 : g[i];
+    }
+
+    /**
+     * Returns the number of nodes expanded by the last plan.
+     * @return
+     */
+    public int getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Plans from a start cell to the closest goal, repairing the previous plan.
+     * @param from start cell index
+     * @return cell indices of the path (start excluded, closest goal last), null if no goal can be reached
+     */
+    public int[] findPath( int from ) {
+        if ( start != -1 && start != from )
+            km += heuristic(start, from);
+        start = from;
+
+        // edges into a changed cell changed, and a changed goal changes its own rhs
+        int[] changed = pending.toSortedArray();
+        pending.clear();
+
+        for (int c : changed) {
+            updateVertex(c);
+
+            int x = c / HEIGHT, y = c % HEIGHT;
+            if ( x > 0 )          updateVertex(c - HEIGHT);
+            if ( x < WIDTH - 1 )  updateVertex(c + HEIGHT);
+            if ( y > 0 )          updateVertex(c - 1);
+            if ( y < HEIGHT - 1 ) updateVertex(c + 1);
+        }
+
+        computeShortestPath();
+
+        if ( g[from] >= INF )
+            return null;
+
+        int[] path = new int[g[from]];
+        int s      = from;
+
+        for (int k = 0; !goal[s]; k++) {
+            int best = -1;
+
+            int x = s / HEIGHT, y = s % HEIGHT;
+            if ( x > 0 )          best = closer(best, s - HEIGHT);
+            if ( y > 0 )          best = closer(best, s - 1);
+            if ( y < HEIGHT - 1 ) best = closer(best, s + 1);
+            if ( x < WIDTH - 1 )  best = closer(best, s + HEIGHT);
+
+            if ( best == -1 || k >= path.length ) // can't happen once consistent
+                return null;
+
+            path[k] = best;
+            s       = best;
+        }
+
+        return path;
+    }
+
+    /**
+     * Returns which of two successors is closer to the goals (first one wins ties).
+     */
+    private int closer( int best, int s ) {
+        if ( !passable[s] || g[s] >= INF )
+            return best;
+
+        return best == -1 || g[s] < g[best] ? s : best;
+    }
+
+    private int heuristic( int a, int b ) {
+        return Math.abs(a / HEIGHT - b / HEIGHT) + Math.abs(a % HEIGHT - b % HEIGHT);
+    }
+
+    private int successorCost( int s ) {
+        return passable[s] && g[s] < INF ? g[s] + 1 : INF;
+    }
+
+    private void updateVertex( int u ) {
+        if ( !goal[u] ) {
+            int best = INF;
+
+            int x = u / HEIGHT, y = u % HEIGHT;
+            if ( x > 0 )          best = Math.min(best, successorCost(u - HEIGHT));
+            if ( x < WIDTH - 1 )  best = Math.min(best, successorCost(u + HEIGHT));
+            if ( y > 0 )          best = Math.min(best, successorCost(u - 1));
+            if ( y < HEIGHT - 1 ) best = Math.min(best, successorCost(u + 1));
+
+            rhs[u] = best;
+        } else {
+            rhs[u] = 0;
+        }
+
+        if ( heapPos[u] >= 0 )
+            remove(u);
+
+        if ( g[u] != rhs[u] )
+            insert(u);
+    }
+
+    private void computeShortestPath() {
+        expanded = 0;
+
+        while (heapSize > 0) {
+            int u = heap[0];
+
+            int m  = Math.min(g[start], rhs[start]);
+            int s1 = m >= INF ? INF : m + km;
+            if ( !less(key1[u], key2[u], s1, m) && rhs[start] == g[start] )
+                break;
+
+            int m2 = Math.min(g[u], rhs[u]);
+            int k1 = m2 + heuristic(start, u) + km;
+
+            expanded += 1;
+
+            if ( less(key1[u], key2[u], k1, m2) ) { // key out of date (the start moved)
+                key1[u] = k1;
+                key2[u] = m2;
+                siftDown(0);
+            } else if ( g[u] > rhs[u] ) {
+                g[u] = rhs[u];
+                remove(u);
+                updatePredecessors(u);
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                updatePredecessors(u);
+            }
+        }
+    }
+
+    private void updatePredecessors( int u ) {
+        if ( !passable[u] ) // nothing can move into it
+            return;
+
+        int x = u / HEIGHT, y = u % HEIGHT;
+        if ( x > 0 )          updateVertex(u - HEIGHT);
+        if ( x < WIDTH - 1 )  updateVertex(u + HEIGHT);
+        if ( y > 0 )          updateVertex(u - 1);
+        if ( y < HEIGHT - 1 ) updateVertex(u + 1);
+    }
+
+    private static boolean less( int a1, int a2, int b1, int b2 ) {
+        return a1 < b1 || (a1 == b1 && a2 < b2);
+    }
+
+    private boolean before( int a, int b ) {
+        return less(key1[a], key2[a], key1[b], key2[b]);
+    }
+
+    private void insert( int u ) {
+        int m   = Math.min(g[u], rhs[u]);
+        key1[u] = m >= INF ? INF : m + (start == -1 ? 0 : heuristic(start, u)) + km;
+        key2[u] = m;
+
+        heap[heapSize] = u;
+        siftUp(heapSize++);
+    }
+
+    private void remove( int u ) {
+        int i      = heapPos[u];
+        heapPos[u] = -1;
+
+        if ( --heapSize > i ) {
+            int moved = heap[heapSize];
+            heap[i]   = moved;
+            siftDown(i);
+
+            if ( heapPos[moved] == i )
+                siftUp(i);
+        }
+    }
+
+    private void siftUp( int i ) {
+        int node = heap[i];
+
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if ( !before(node, heap[parent]) )
+                break;
+
+            heap[i]          = heap[parent];
+            heapPos[heap[i]] = i;
+            i                = parent;
+        }
+
+        heap[i]       = node;
+        heapPos[node] = i;
+    }
+
+    private void siftDown( int i ) {
+        int node = heap[i];
+
+        while (true) {
+            int child = 2 * i + 1;
+            if ( child >= heapSize )
+                break;
+
+            if ( child + 1 < heapSize && before(heap[child + 1], heap[child]) )
+                child += 1;
+
+            if ( !before(heap[child], node) )
+                break;
+
+            heap[i]          = heap[child];
+            heapPos[heap[i]] = i;
+            i                = child;
+        }
+
+        heap[i]       = node;
+        heapPos[node] = i;
+    }
+}
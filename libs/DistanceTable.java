@@ -0,0 +1,177 @@
+package libs;
+
+/**
+ * All-pairs shortest path table (distance and next hop) over a 4-connected grid with unit costs,
+ * meant for small arenas (n cells take 2*n*n ints).
+ *
+ * Moving into a cell costs 1 if the cell is passable, otherwise there is no edge.
+ * The table is built with one BFS per target cell and kept up to date when a cell flips between
+ * passable and blocked, only the targets whose distances can change are searched again.
+ * Cells are indexed like the occupancy grid (x*HEIGHT+y).
+ */
+public class DistanceTable {
+    public static final int MAX_CELLS = 256; // 512KB of table
+    private static final int INF = Integer.MAX_VALUE;
+
+    public final int WIDTH;
+    public final int HEIGHT;
+    private final int n;
+
+    private final boolean[] passable;
+    private final int[] dist;  // dist[from*n+to]
+    private final int[] next;  // next[from*n+to], first cell after from on the way to to (-1 if none)
+    private final int[] queue; // BFS workspace
+
+    public DistanceTable( int w, int h ) {
+        if ( w * h > MAX_CELLS )
+            throw new IllegalArgumentException("Too many cells for an all-pairs table: " + w * h);
+
+        this.WIDTH    = w;
+        this.HEIGHT   = h;
+        this.n        = w * h;
+        this.passable = new boolean[n];
+        this.dist     = new int[n * n];
+        this.next     = new int[n * n];
+        this.queue    = new int[n];
+
+        rebuild();
+    }
+
+    /**
+     * Replaces the passability of every cell and recomputes the whole table.
+     * @param cells
+     */
+    public void rebuild( boolean[] cells ) {
+        System.arraycopy(cells, 0, passable, 0, n);
+        rebuild();
+    }
+
+    /**
+     * Recomputes the whole table.
+     */
+    public void rebuild() {
+        for (int to = 0; to < n; to++)
+            computeColumn(to);
+    }
+
+    public boolean isPassable( int i ) {
+        return passable[i];
+    }
+
+    /**
+     * Sets if a cell can be moved into and updates the table.
+     * @param c cell index
+     * @param b
+     */
+    public void setPassable( int c, boolean b ) {
+        if ( passable[c] == b )
+            return;
+
+        int[] around = new int[4];
+        int count    = 0;
+
+        int x = c / HEIGHT, y = c % HEIGHT;
+        if ( x > 0 )          around[count++] = c - HEIGHT;
+        if ( x < WIDTH - 1 )  around[count++] = c + HEIGHT;
+        if ( y > 0 )          around[count++] = c - 1;
+        if ( y < HEIGHT - 1 ) around[count++] = c + 1;
+
+        passable[c] = b;
+
+        for (int to = 0; to < n; to++) {
+            boolean affected = to == c;
+
+            for (int k = 0; k < count && !affected; k++) {
+                int u = around[k];
+
+                if ( b ) // new edge u->c, only matters if it gives u a shorter way
+                    affected = dist[c * n + to] != INF && dist[u * n + to] > dist[c * n + to] + 1;
+                else     // removed edge u->c, only matters if u went through it
+                    affected = next[u * n + to] == c;
+            }
+
+            if ( affected )
+                computeColumn(to);
+        }
+    }
+
+    /**
+     * BFS backwards from a target, fills in the distances/next hops of every cell towards it.
+     */
+    private void computeColumn( int to ) {
+        for (int from = 0; from < n; from++) {
+            dist[from * n + to] = INF;
+            next[from * n + to] = -1;
+        }
+
+        int head = 0, tail = 0;
+        dist[to * n + to] = 0;
+        queue[tail++]     = to;
+
+        while (head < tail) {
+            int v = queue[head++];
+            if ( !passable[v] ) // nothing can move into it
+                continue;
+
+            int d = dist[v * n + to] + 1;
+            int x = v / HEIGHT, y = v % HEIGHT;
+
+            if ( x > 0 )          tail = reach(v - HEIGHT, v, to, d, tail);
+            if ( y > 0 )          tail = reach(v - 1, v, to, d, tail);
+            if ( y < HEIGHT - 1 ) tail = reach(v + 1, v, to, d, tail);
+            if ( x < WIDTH - 1 )  tail = reach(v + HEIGHT, v, to, d, tail);
+        }
+    }
+
+    private int reach( int u, int v, int to, int d, int tail ) {
+        if ( dist[u * n + to] != INF )
+            return tail;
+
+        dist[u * n + to] = d;
+        next[u * n + to] = v;
+        queue[tail]      = u;
+
+        return tail + 1;
+    }
+
+    /**
+     * Returns the number of moves from a cell to another, -1 if it can't be reached.
+     * @param from
+     * @param to
+     * @return
+     */
+    public int getDistance( int from, int to ) {
+        int d = dist[from * n + to];
+        return d == INF ? -1 : d;
+    }
+
+    /**
+     * Returns the cell to move to next on the way from a cell to another, -1 if there is none.
+     * @param from
+     * @param to
+     * @return
+     */
+    public int getNextHop( int from, int to ) {
+        return next[from * n + to];
+    }
+
+    /**
+     * Returns the cells of the shortest path between two cells (from excluded), null if to can't be reached.
+     * @param from
+     * @param to
+     * @return
+     */
+    public int[] getPath( int from, int to ) {
+        int d = dist[from * n + to];
+        if ( d == INF )
+            return null;
+
+        int[] path = new int[d];
+        for (int k = 0; k < d; k++) {
+            from    = next[from * n + to];
+            path[k] = from;
+        }
+
+        return path;
+    }
+}
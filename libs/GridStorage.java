@@ -0,0 +1,55 @@
+package libs;
+import java.io.Serializable;
+
+/**
+ * Backend holding the state of every cell of an occupancy grid.
+ * The grid itself only implements the logic (neighbours, probabilities, etc.) on top of it.
+ */
+public interface GridStorage extends Serializable {
+    /**
+     * Callback used to walk over the cells of a storage.
+     */
+    public interface CellVisitor {
+        public void visit( int x, int y );
+    }
+    
+    public int getM( int x, int y );
+    
+    public int getC( int x, int y );
+    
+    public double getP( int x, int y );
+    
+    public boolean isVisited( int x, int y );
+    
+    public boolean isScanned( int x, int y );
+    
+    /**
+     * Stores the new observation state of a cell (and marks it as scanned).
+     * @param x
+     * @param y
+     * @param m
+     * @param c
+     * @param p
+     */
+    public void store( int x, int y, int m, int c, double p );
+    
+    public void setVisited( int x, int y, boolean b );
+    
+    /**
+     * Returns the number of visited cells.
+     * @return
+     */
+    public int countVisited();
+    
+    /**
+     * Calls the visitor for every scanned cell (order is up to the storage).
+     * @param visitor
+     */
+    public void forEachScanned( CellVisitor visitor );
+    
+    /**
+     * Returns an independent copy of the storage (later writes to either side are not seen by the other).
+     * @return
+     */
+    public GridStorage copy();
+}
@@ -0,0 +1,479 @@
+package libs;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hierarchical path finding (HPA*) for big maps, built on top of a WaypointResolver.
+ *
+ * The grid is cut into square clusters. Where two clusters touch, every run of cells passable on both sides
+ * gives an entrance (one transition in its middle, or one at each end if it is long), the cells of the
+ * transitions are the nodes of an abstract graph: neighbouring transition cells are joined with cost 1 and the
+ * nodes of a cluster are joined with their distance inside the cluster, which is cached per cluster.
+ * A query links start and goal to the nodes of their clusters, searches the (small) abstract graph and only then
+ * refines the abstract path into cells, one cluster at a time.
+ *
+ * refresh() only rebuilds the clusters where a cell changed passability (and the ones across the border if the
+ * cell was on it). Paths are at most a few cells longer than the shortest ones (they go through the transitions).
+ */
+public class HierarchicalPlanner {
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    /**
+     * Cached state of a cluster.
+     */
+    private static class Cluster {
+        int[] nodes     = new int[0]; // transition cells inside the cluster
+        int[] costs     = new int[0]; // distance between nodes[i] and nodes[j] in costs[i*nodes.length+j]
+        int[] transFrom = new int[0]; // transitions leaving the cluster: from a node here...
+        int[] transTo   = new int[0]; // ...to the cell across the border
+    }
+
+    /**
+     * The abstract graph as seen by AStarSearch (ids are cell indices, only nodes and start/goal are ever reached).
+     */
+    private class AbstractGraph implements IntGraph {
+        public int size() {
+            return n;
+        }
+
+        public void neighbours( int id, IntGraph.NeighbourVisitor visitor ) {
+            if ( id == start ) {
+                for (int k = 0; k < startTargets.length; k++)
+                    visitor.visit(startTargets[k]);
+            }
+
+            int local = localIndex[id];
+            if ( local == -1 || id == goal )
+                return;
+
+            Cluster cluster = clusters[clusterOf(id)];
+            int k           = cluster.nodes.length;
+
+            for (int j = 0; j < k; j++)
+                if ( j != local && cluster.costs[local * k + j] < INF )
+                    visitor.visit(cluster.nodes[j]);
+
+            for (int t = 0; t < cluster.transFrom.length; t++)
+                if ( cluster.transFrom[t] == id )
+                    visitor.visit(cluster.transTo[t]);
+
+            if ( goalCost[id] < INF )
+                visitor.visit(goal);
+        }
+
+        public float cost( int from, int to ) {
+            if ( from == start ) {
+                int k = startLink(to);
+                if ( k != -1 )
+                    return startCosts[k];
+            }
+
+            if ( to == goal && goalCost[from] < INF && clusterOf(from) == clusterOf(goal) )
+                return goalCost[from];
+
+            if ( clusterOf(from) != clusterOf(to) ) // transition
+                return 1;
+
+            Cluster cluster = clusters[clusterOf(from)];
+            return cluster.costs[localIndex[from] * cluster.nodes.length + localIndex[to]];
+        }
+
+        public float heuristic( int from, int to ) {
+            return Math.abs(from / HEIGHT - to / HEIGHT) + Math.abs(from % HEIGHT - to % HEIGHT);
+        }
+    }
+
+    public final int WIDTH;
+    public final int HEIGHT;
+    public final int CLUSTER_SIZE;
+
+    private final int n;
+    private final int clustersX;
+    private final int clustersY;
+    private final Cluster[] clusters;
+
+    private final OccupancyGrid grid;
+    private final WaypointResolver resolver;
+    private final boolean[] passable;  // passability the clusters were built with
+    private final int[] localIndex;    // position of a cell in the nodes of its cluster (-1 if not a node)
+    private long version;
+    private int lastRebuilt;
+
+    // in-cluster BFS workspace
+    private final int[] bfsDist;
+    private final int[] bfsParent;
+    private final int[] bfsStamp;
+    private final int[] bfsQueue;
+    private int bfsId;
+
+    // abstract search
+    private final AStarSearch search;
+    private final AStarSearch.Workspace workspace;
+    private int start = -1, goal = -1;
+    private int[] startTargets = new int[0];
+    private int[] startCosts   = new int[0];
+    private int[] startVia     = new int[0]; // first step if a start link goes through another cluster (-1 if not)
+    private final int[] goalCost;       // distance to the goal of the nodes in the goal's cluster
+
+    /**
+     * @param resolver resolver of the grid to plan on (refresh() refreshes it too)
+     * @param clusterSize side of the clusters in cells
+     */
+    public HierarchicalPlanner( WaypointResolver resolver, int clusterSize ) {
+        this.resolver     = resolver;
+        this.grid         = resolver.getGrid();
+        this.WIDTH        = grid.WIDTH;
+        this.HEIGHT       = grid.HEIGHT;
+        this.CLUSTER_SIZE = clusterSize;
+        this.n            = WIDTH * HEIGHT;
+        this.clustersX    = (WIDTH + clusterSize - 1) / clusterSize;
+        this.clustersY    = (HEIGHT + clusterSize - 1) / clusterSize;
+        this.clusters     = new Cluster[clustersX * clustersY];
+        this.passable     = new boolean[n];
+        this.localIndex   = new int[n];
+        this.bfsDist      = new int[n];
+        this.bfsParent    = new int[n];
+        this.bfsStamp     = new int[n];
+        this.bfsQueue     = new int[n];
+        this.goalCost     = new int[n];
+
+        Arrays.fill(localIndex, -1);
+        Arrays.fill(goalCost, INF);
+
+        resolver.refresh();
+        this.version = grid.getVersion();
+
+        for (int i = 0; i < n; i++)
+            passable[i] = resolver.isPassable(i);
+        for (int c = 0; c < clusters.length; c++)
+            clusters[c] = new Cluster();
+        for (int c = 0; c < clusters.length; c++)
+            buildCluster(c);
+
+        this.search    = new AStarSearch(new AbstractGraph());
+        this.workspace = search.newWorkspace();
+    }
+
+    private int clusterOf( int cell ) {
+        return (cell / HEIGHT / CLUSTER_SIZE) * clustersY + (cell % HEIGHT) / CLUSTER_SIZE;
+    }
+
+    /**
+     * Brings the clusters up to date with the grid, only the ones where passability changed are rebuilt.
+     */
+    public void refresh() {
+        resolver.refresh();
+
+        int[] changed = grid.changesSince(version);
+        version       = grid.getVersion();
+        lastRebuilt   = 0;
+
+        boolean[] dirty = new boolean[clusters.length];
+
+        for (int k = 0, count = changed == null ? n : changed.length; k < count; k++) {
+            int cell = changed == null ? k : changed[k];
+            boolean b = resolver.isPassable(cell);
+
+            if ( passable[cell] == b )
+                continue;
+
+            passable[cell] = b;
+
+            int x = cell / HEIGHT, y = cell % HEIGHT;
+            dirty[clusterOf(cell)] = true;
+
+            // on a border the entrances of the cluster across change as well
+            if ( x % CLUSTER_SIZE == 0 && x > 0 )                               dirty[clusterOf(cell - HEIGHT)] = true;
+            if ( x % CLUSTER_SIZE == CLUSTER_SIZE - 1 && x < WIDTH - 1 )        dirty[clusterOf(cell + HEIGHT)] = true;
+            if ( y % CLUSTER_SIZE == 0 && y > 0 )                               dirty[clusterOf(cell - 1)] = true;
+            if ( y % CLUSTER_SIZE == CLUSTER_SIZE - 1 && y < HEIGHT - 1 )       dirty[clusterOf(cell + 1)] = true;
+        }
+
+        for (int c = 0; c < clusters.length; c++) {
+            if ( dirty[c] ) {
+                buildCluster(c);
+                lastRebuilt++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of clusters the last refresh() rebuilt.
+     * @return
+     */
+    public int getLastRebuilt() {
+        return lastRebuilt;
+    }
+
+    /**
+     * Finds the transitions of a cluster on its four borders and caches the distances between them.
+     */
+    private void buildCluster( int c ) {
+        Cluster cluster = clusters[c];
+        for (int node : cluster.nodes)
+            localIndex[node] = -1;
+
+        int cx = c / clustersY, cy = c % clustersY;
+        int x0 = cx * CLUSTER_SIZE, x1 = Math.min(WIDTH, x0 + CLUSTER_SIZE) - 1;
+        int y0 = cy * CLUSTER_SIZE, y1 = Math.min(HEIGHT, y0 + CLUSTER_SIZE) - 1;
+
+        int[] trans = new int[0];
+        if ( x0 > 0 )          trans = entrances(trans, x0, y0, 0, 1, y1 - y0 + 1, -HEIGHT); // left
+        if ( x1 < WIDTH - 1 )  trans = entrances(trans, x1, y0, 0, 1, y1 - y0 + 1, HEIGHT);  // right
+        if ( y0 > 0 )          trans = entrances(trans, x0, y0, 1, 0, x1 - x0 + 1, -1);      // bottom
+        if ( y1 < HEIGHT - 1 ) trans = entrances(trans, x0, y1, 1, 0, x1 - x0 + 1, 1);       // top
+
+        int count       = trans.length / 2;
+        cluster.transFrom = new int[count];
+        cluster.transTo   = new int[count];
+
+        int[] nodes = new int[count];
+        int k       = 0;
+
+        for (int t = 0; t < count; t++) {
+            cluster.transFrom[t] = trans[2 * t];
+            cluster.transTo[t]   = trans[2 * t + 1];
+
+            if ( localIndex[trans[2 * t]] == -1 ) {
+                localIndex[trans[2 * t]] = k;
+                nodes[k++]               = trans[2 * t];
+            }
+        }
+
+        cluster.nodes = Arrays.copyOf(nodes, k);
+        cluster.costs = new int[k * k];
+
+        for (int i = 0; i < k; i++) {
+            bfs(cluster.nodes[i], c);
+            for (int j = 0; j < k; j++)
+                cluster.costs[i * k + j] = distance(cluster.nodes[j]);
+        }
+    }
+
+    /**
+     * Adds the transitions along one border of a cluster, (x,y) is the first cell of the border inside the cluster,
+     * (dx,dy) the direction along it and across the offset to the cell on the other side.
+     */
+    private int[] entrances( int[] trans, int x, int y, int dx, int dy, int length, int across ) {
+        int runStart = -1;
+
+        for (int k = 0; k <= length; k++) {
+            int cell  = (x + k * dx) * HEIGHT + (y + k * dy);
+            boolean open = k < length && passable[cell] && passable[cell + across];
+
+            if ( open && runStart == -1 )
+                runStart = k;
+
+            if ( !open && runStart != -1 ) {
+                int runEnd = k - 1;
+
+                if ( runEnd - runStart + 1 < 6 ) { // short entrance: one transition in the middle
+                    trans = addTransition(trans, x, y, dx, dy, (runStart + runEnd) / 2, across);
+                } else {                            // long one: one at each end
+                    trans = addTransition(trans, x, y, dx, dy, runStart, across);
+                    trans = addTransition(trans, x, y, dx, dy, runEnd, across);
+                }
+
+                runStart = -1;
+            }
+        }
+
+        return trans;
+    }
+
+    private int[] addTransition( int[] trans, int x, int y, int dx, int dy, int k, int across ) {
+        int cell = (x + k * dx) * HEIGHT + (y + k * dy);
+
+        trans = Arrays.copyOf(trans, trans.length + 2);
+        trans[trans.length - 2] = cell;
+        trans[trans.length - 1] = cell + across;
+
+        return trans;
+    }
+
+    /**
+     * BFS from a cell through the passable cells of a cluster.
+     */
+    private void bfs( int from, int c ) {
+        bfsId += 1;
+
+        int head = 0, tail = 0;
+        bfsDist[from]   = 0;
+        bfsParent[from] = -1;
+        bfsStamp[from]  = bfsId;
+        bfsQueue[tail++] = from;
+
+        while (head < tail) {
+            int v = bfsQueue[head++];
+            int x = v / HEIGHT, y = v % HEIGHT;
+
+            if ( x > 0 )          tail = visit(v, v - HEIGHT, c, tail);
+            if ( y > 0 )          tail = visit(v, v - 1, c, tail);
+            if ( y < HEIGHT - 1 ) tail = visit(v, v + 1, c, tail);
+            if ( x < WIDTH - 1 )  tail = visit(v, v + HEIGHT, c, tail);
+        }
+    }
+
+    private int visit( int v, int u, int c, int tail ) {
+        if ( bfsStamp[u] == bfsId || !passable[u] || clusterOf(u) != c )
+            return tail;
+
+        bfsDist[u]     = bfsDist[v] + 1;
+        bfsParent[u]   = v;
+        bfsStamp[u]    = bfsId;
+        bfsQueue[tail] = u;
+
+        return tail + 1;
+    }
+
+    private int distance( int cell ) {
+        return bfsStamp[cell] == bfsId ? bfsDist[cell] : INF;
+    }
+
+    /**
+     * Calculates a path (close to the shortest one) from a start cell to a goal cell.
+     * Call refresh() first so the clusters match the grid.
+     * @param startCell
+     * @param goalCell
+     * @return list of WaypointResolver nodes (start excluded), null if the goal can't be reached
+     */
+    public List<WaypointResolver.Node> calculatePath( OccupancyGrid.GridCell startCell, OccupancyGrid.GridCell goalCell ) {
+        int from = startCell.x * HEIGHT + startCell.y;
+        int to   = goalCell.x * HEIGHT + goalCell.y;
+
+        if ( from == to )
+            return new ArrayList<WaypointResolver.Node>();
+        if ( !passable[to] )
+            return null;
+
+        // link the goal to the nodes of its cluster
+        int goalCluster = clusterOf(to);
+        bfs(to, goalCluster);
+        for (int node : clusters[goalCluster].nodes)
+            goalCost[node] = distance(node);
+
+        // and the start to the nodes of its cluster (and to the goal if it is in there too), plus the ones of the 
+        // clusters next to it, as the start does not have to be passable (so it may not be part of any entrance)
+        this.start = from;
+        this.goal  = to;
+
+        int[] targets = new int[0], costs = new int[0], vias = new int[0];
+        int count     = 0;
+        int x         = from / HEIGHT, y = from % HEIGHT;
+        int[] firstSteps = {-1, x > 0 ? from - HEIGHT : -1, y > 0 ? from - 1 : -1, y < HEIGHT - 1 ? from + 1 : -1, x < WIDTH - 1 ? from + HEIGHT : -1};
+
+        for (int s = 0; s < firstSteps.length; s++) {
+            int via = firstSteps[s];
+            if ( s > 0 && (via == -1 || !passable[via] || clusterOf(via) == clusterOf(from)) )
+                continue;
+
+            int cell  = s == 0 ? from : via;
+            int links = clusters[clusterOf(cell)].nodes.length + 1;
+            targets   = Arrays.copyOf(targets, count + links);
+            costs     = Arrays.copyOf(costs, count + links);
+            vias      = Arrays.copyOf(vias, count + links);
+            count     = linkStart(cell, via, targets, costs, vias, count);
+        }
+
+        this.startTargets = Arrays.copyOf(targets, count);
+        this.startCosts   = Arrays.copyOf(costs, count);
+        this.startVia     = Arrays.copyOf(vias, count);
+
+        int[] abstractPath = search.findPath(from, to, workspace);
+        int firstVia       = abstractPath == null ? -1 : startVia[startLink(abstractPath[0])];
+
+        for (int node : clusters[goalCluster].nodes)
+            goalCost[node] = INF;
+        this.start = this.goal = -1;
+
+        if ( abstractPath == null )
+            return null;
+
+        // refine: transitions are single steps, everything else is a path inside one cluster
+        WaypointResolver.Node[] map = resolver.getMap();
+        List<WaypointResolver.Node> path = new ArrayList<WaypointResolver.Node>();
+        int prev = from;
+
+        if ( firstVia != -1 ) { // the start link steps into the next cluster first
+            path.add(map[firstVia]);
+            prev = firstVia;
+        }
+
+        for (int next : abstractPath) {
+            if ( prev == next )
+                continue;
+            
+            if ( clusterOf(prev) != clusterOf(next) ) {
+                path.add(map[next]);
+            } else {
+                bfs(prev, clusterOf(prev));
+
+                int size = path.size();
+                for (int cell = next; cell != prev; cell = bfsParent[cell])
+                    path.add(size, map[cell]);
+            }
+
+            prev = next;
+        }
+
+        return path;
+    }
+
+    /**
+     * Returns the cheapest link from the start to a node (index in startTargets), -1 if there is none.
+     */
+    private int startLink( int to ) {
+        int best = -1;
+        for (int k = 0; k < startTargets.length; k++)
+            if ( startTargets[k] == to && (best == -1 || startCosts[k] < startCosts[best]) )
+                best = k;
+
+        return best;
+    }
+
+    /**
+     * Links the start to the nodes (and the goal) reachable from a cell inside that cell's cluster.
+     * @param via first cell after the start (-1 if cell is the start)
+     */
+    private int linkStart( int cell, int via, int[] targets, int[] costs, int[] vias, int count ) {
+        int c    = clusterOf(cell);
+        int step = via == -1 ? 0 : 1;
+        bfs(cell, c);
+
+        for (int node : clusters[c].nodes) {
+            if ( distance(node) < INF ) {
+                targets[count] = node;
+                costs[count]   = distance(node) + step;
+                vias[count++]  = via;
+            }
+        }
+        if ( c == clusterOf(goal) && distance(goal) < INF ) {
+            targets[count] = goal;
+            costs[count]   = distance(goal) + step;
+            vias[count++]  = via;
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of abstract nodes expanded by the last calculatePath call.
+     * @return
+     */
+    public int getLastExpanded() {
+        return workspace.getExpanded();
+    }
+
+    /**
+     * Returns the number of abstract nodes (transition cells).
+     * @return
+     */
+    public int getNumNodes() {
+        int count = 0;
+        for (Cluster cluster : clusters)
+            count += cluster.nodes.length;
+
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+package libs;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Set of non negative int indices (e.g. grid cell indices) with O(1) add/remove/contains and size.
+ * Open addressing (linear probing) over a plain int array, so it does not box or allocate per operation.
+ */
+public class IndexSet implements Serializable {
+    private static final long serialVersionUID = 8032650961417313958L;
+    private static final int EMPTY = -1;
+    
+    private int[] table;
+    private int size;
+    
+    public IndexSet() {
+        this.table = new int[16];
+        Arrays.fill(table, EMPTY);
+    }
+    
+    public IndexSet( IndexSet other ) {
+        this.table = other.table.clone();
+        this.size  = other.size;
+    }
+    
+    private static int hash( int k ) {
+        int h = k * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Returns the slot holding k or the empty slot where it would go.
+     */
+    private int slot( int k ) {
+        return slot(table, k);
+    }
+    
+    private static int slot( int[] table, int k ) {
+        int mask = table.length - 1;
+        int i    = hash(k) & mask;
+        
+        while (table[i] != EMPTY && table[i] != k)
+            i = (i + 1) & mask;
+        
+        return i;
+    }
+    
+    public boolean contains( int k ) {
+        return table[slot(k)] == k;
+    }
+    
+    public boolean add( int k ) {
+        int i = slot(k);
+        if ( table[i] == k )
+            return false;
+        
+        table[i] = k;
+        size += 1;
+        
+        if ( size * 2 > table.length )
+            resize();
+        
+        return true;
+    }
+    
+    public boolean remove( int k ) {
+        int i = slot(k);
+        if ( table[i] != k )
+            return false;
+        
+        // backward shift deletion (keeps probe sequences intact without tombstones)
+        int mask = table.length - 1;
+        int j    = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if ( table[j] == EMPTY )
+                break;
+            
+            int h = hash(table[j]) & mask;
+            if ( (j > i && (h <= i || h > j)) || (j < i && (h <= i && h > j)) ) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        
+        table[i] = EMPTY;
+        size -= 1;
+        
+        return true;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+    
+    /**
+     * Returns the indices in ascending order.
+     * @return
+     */
+    public int[] toSortedArray() {
+        int[] out = new int[size];
+        int n     = 0;
+        
+        for (int k : table)
+            if ( k != EMPTY )
+                out[n++] = k;
+        
+        Arrays.sort(out);
+        return out;
+    }
+    
+    /**
+     * Doubles the table. The new one is filled before it replaces the old one, so the table is never
+     * half way through the rehash (a table of zeros has no empty slot, slot() would never return).
+     */
+    private void resize() {
+        int[] bigger = new int[table.length * 2];
+        Arrays.fill(bigger, EMPTY);
+        
+        for (int k : table)
+            if ( k != EMPTY )
+                bigger[slot(bigger, k)] = k;
+        
+        table = bigger;
+    }
+}
@@ -0,0 +1,43 @@
+package libs;
+
+/**
+ * A graph whose nodes are the ints 0..size()-1, as seen by AStarSearch.
+ * Implementations should not allocate per call, the search calls these in its inner loop.
+ */
+public interface IntGraph {
+    /**
+     * Receives the neighbours of a node.
+     */
+    interface NeighbourVisitor {
+        void visit(int id);
+    }
+    
+    /**
+     * Returns the number of nodes.
+     * @return
+     */
+    int size();
+    
+    /**
+     * Passes every node that can be reached from a node in one step to the visitor.
+     * @param id
+     * @param visitor
+     */
+    void neighbours(int id, NeighbourVisitor visitor);
+    
+    /**
+     * Returns the cost of the step between two neighbouring nodes.
+     * @param from
+     * @param to
+     * @return
+     */
+    float cost(int from, int to);
+    
+    /**
+     * Returns an estimate (never more than the real one) of the cost between two nodes.
+     * @param from
+     * @param to
+     * @return
+     */
+    float heuristic(int from, int to);
+}
@@ -0,0 +1,122 @@
+package libs;
+
+/**
+ * Jump point search over a 4-connected grid with unit costs, as a PrunedGraph for AStarSearch.
+ * 
+ * On a uniform grid most shortest paths are symmetric (same moves in another order), plain A* expands all of them.
+ * Here a node only goes on straight ahead and turns where it has to: a horizontal move keeps going until it finds
+ * the goal, a forced neighbour (a cell next to the move only reachable around an obstacle) or a cell from 
+ * which a vertical jump finds one of those. Vertical moves stop at the goal or at forced neighbours.
+ * Only these jump points are put in the open list, the cells between them are the straight lines joining them.
+ * 
+ * Moving into a cell requires it to be passable, node ids are cell indices (x*HEIGHT+y).
+ */
+public abstract class JumpPointGraph implements PrunedGraph {
+    private static final int[] DIR_X = {-1, 0, 0, 1}; // same order as neighbours()
+    private static final int[] DIR_Y = {0, -1, 1, 0};
+    
+    public final int WIDTH;
+    public final int HEIGHT;
+    
+    public JumpPointGraph( int w, int h ) {
+        this.WIDTH  = w;
+        this.HEIGHT = h;
+    }
+    
+    /**
+     * Returns if a cell can be moved into.
+     * @param id
+     * @return
+     */
+    protected abstract boolean isPassable( int id );
+    
+    private boolean passable( int x, int y ) {
+        return x >= 0 && y >= 0 && x < WIDTH && y < HEIGHT && isPassable(x * HEIGHT + y);
+    }
+    
+    @Override
+    public int size() {
+        return WIDTH * HEIGHT;
+    }
+    
+    /**
+     * Unpruned neighbours (all passable adjacent cells), used for searches without a single goal.
+     */
+    @Override
+    public void neighbours( int id, IntGraph.NeighbourVisitor visitor ) {
+        int x = id / HEIGHT, y = id % HEIGHT;
+        
+        if ( passable(x - 1, y) ) visitor.visit(id - HEIGHT);
+        if ( passable(x, y - 1) ) visitor.visit(id - 1);
+        if ( passable(x, y + 1) ) visitor.visit(id + 1);
+        if ( passable(x + 1, y) ) visitor.visit(id + HEIGHT);
+    }
+    
+    @Override
+    public void successors( int id, int parent, int goal, IntGraph.NeighbourVisitor visitor ) {
+        int x = id / HEIGHT, y = id % HEIGHT;
+        int dx = 0, dy = 0;
+        
+        if ( parent != -1 ) {
+            dx = Integer.signum(x - parent / HEIGHT);
+            dy = Integer.signum(y - parent % HEIGHT);
+        }
+        
+        // every direction but going back
+        for (int d = 0; d < DIR_X.length; d++) {
+            int ddx = DIR_X[d];
+            int ddy = DIR_Y[d];
+            
+            if ( parent != -1 && ddx == -dx && ddy == -dy )
+                continue;
+            
+            int jumpPoint = jump(x + ddx, y + ddy, ddx, ddy, goal);
+            if ( jumpPoint != -1 )
+                visitor.visit(jumpPoint);
+        }
+    }
+    
+    /**
+     * Moves from a cell in a direction until a jump point is found.
+     * @return the jump point, -1 if the move runs into a wall/blocked cell first
+     */
+    private int jump( int x, int y, int dx, int dy, int goal ) {
+        while (passable(x, y)) {
+            int id = x * HEIGHT + y;
+            if ( id == goal )
+                return id;
+            
+            if ( dx != 0 ) {
+                // forced neighbours above/below
+                if ( (passable(x, y - 1) && !passable(x - dx, y - 1)) || (passable(x, y + 1) && !passable(x - dx, y + 1)) )
+                    return id;
+                
+                // turning here might be needed to reach a jump point up or down
+                if ( jump(x, y + 1, 0, 1, goal) != -1 || jump(x, y - 1, 0, -1, goal) != -1 )
+                    return id;
+            } else {
+                // forced neighbours left/right
+                if ( (passable(x - 1, y) && !passable(x - 1, y - dy)) || (passable(x + 1, y) && !passable(x + 1, y - dy)) )
+                    return id;
+            }
+            
+            x += dx;
+            y += dy;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Cost between two jump points (they are always on a straight line).
+     */
+    @Override
+    public float cost( int from, int to ) {
+        return heuristic(from, to);
+    }
+    
+    @Override
+    public float heuristic( int from, int to ) {
+        return Math.abs(from / HEIGHT - to / HEIGHT) + Math.abs(from % HEIGHT - to % HEIGHT);
+    }
+}
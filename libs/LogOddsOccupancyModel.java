@@ -0,0 +1,74 @@
+package libs;
+
+/**
+ * Bayesian log-odds occupancy model.
+ * Every observation adds the log-odds of the inverse sensor model (hit or miss) to the cell, 
+ * the result is clamped so that a cell can never become completely certain and can still be 
+ * flipped by later readings.
+ */
+public class LogOddsOccupancyModel implements OccupancyModel {
+    private static final long serialVersionUID = -3268813262125934032L;
+    // Default inverse sensor model
+    public static final double DEFAULT_P_HIT  = 0.7;
+    public static final double DEFAULT_P_MISS = 0.3;
+    public static final double DEFAULT_P_MIN  = 0.12;
+    public static final double DEFAULT_P_MAX  = 0.97;
+    
+    private final double L_HIT;   // log-odds added by an occupied reading
+    private final double L_MISS;  // log-odds added by a free reading
+    private final double L_MIN;   // lower clamp bound
+    private final double L_MAX;   // upper clamp bound
+    
+    public LogOddsOccupancyModel() {
+        this(DEFAULT_P_HIT, DEFAULT_P_MISS, DEFAULT_P_MIN, DEFAULT_P_MAX);
+    }
+    
+    /**
+     * @param pHit  probability of occupancy given an occupied reading
+     * @param pMiss probability of occupancy given a free reading
+     * @param pMin  lowest probability a cell can reach
+     * @param pMax  highest probability a cell can reach
+     */
+    public LogOddsOccupancyModel( double pHit, double pMiss, double pMin, double pMax ) {
+        if ( pHit <= 0.5 || pHit >= 1 )
+            throw new IllegalArgumentException("Hit probability must satisfy 0.5 < pHit < 1");
+        if ( pMiss <= 0 || pMiss >= 0.5 )
+            throw new IllegalArgumentException("Miss probability must satisfy 0 < pMiss < 0.5");
+        if ( pMin <= 0 || pMax >= 1 || pMin >= pMax )
+            throw new IllegalArgumentException("Clamp bounds must satisfy 0 < pMin < pMax < 1");
+        
+        this.L_HIT  = logOdds(pHit);
+        this.L_MISS = logOdds(pMiss);
+        this.L_MIN  = logOdds(pMin);
+        this.L_MAX  = logOdds(pMax);
+    }
+    
+    /**
+     * Converts a probability into log-odds.
+     * @param p
+     * @return
+     */
+    public static double logOdds( double p ) {
+        return Math.log(p / (1 - p));
+    }
+    
+    /**
+     * Converts log-odds back into a probability.
+     * @param l
+     * @return
+     */
+    public static double probability( double l ) {
+        return 1 - 1 / (1 + Math.exp(l));
+    }
+
+    public double update( double p, int m, int c, boolean occupied ) {
+        // first observation starts from the uninformed prior (Pr = 0.5)
+        double l = c <= 1 ? 0 : logOdds(p);
+        
+        l += occupied ? L_HIT : L_MISS;
+        l  = l > L_MAX ? L_MAX : l;
+        l  = l < L_MIN ? L_MIN : l;
+        
+        return probability(l);
+    }
+}
@@ -1,90 +1,84 @@
 package libs;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 /**
  * A class used to define the Occupancy grid data structure. 
  * This grid holds all the probabilities of each individual cell as well as whether the robot has visited them or not.
  * Additionally, it contains many helper methods to return exactly what the robot needs for it's calculations.
+ * 
+ * The cell state is kept by a GridStorage backend (flat primitive arrays), GridCell objects are only
+ * lightweight views over that storage.
  */
 public class OccupancyGrid implements Serializable {
     // ID
-    private static final long serialVersionUID = -1787008957389378530L;
-    public static final double FREE_CELL_DETERMINANT = 0.5; // Probability determining whether a block is blocked or not!
+    private static final long serialVersionUID = 2731146418850275416L;
+    public static final double FREE_CELL_DETERMINANT = 0.5; // Probability determining whether a block is blocked or not! (default)
     // Size of the grid
     public final int WIDTH;
     public final int HEIGHT;
     // Hard coded directional points. (For orthogonal movement)
     private final int[] DIRECTIONS;
+    // Neighbour offsets and direction bits (up, down, left, right)
+    private static final int[] DIR_X = { 0, 0, -1, 1 };
+    private static final int[] DIR_Y = { 1, -1, 0, 0 };
+    public static final int DIR_UP    = 1;
+    public static final int DIR_DOWN  = 2;
+    public static final int DIR_LEFT  = 4;
+    public static final int DIR_RIGHT = 8;
+    // Neighbour filters
+    public static final int NEIGHBOUR_ANY            = 0;
+    public static final int NEIGHBOUR_BLOCKED        = 1;
+    public static final int NEIGHBOUR_UNVISITED      = 2;
+    public static final int NEIGHBOUR_FREE_UNVISITED = 3;
     
+    /**
+     * View of a single cell of the grid.
+     * Holds no state of its own apart from the position, everything is read from/written to the grid storage.
+     * Two views are equal if they point to the same position.
+     */
     public class GridCell implements Serializable {
         private static final long serialVersionUID = -1249206336466467891L;
         public final int x;
         public final int y;
         
-        private boolean visited; // If a cell has been visited or not by the robot.
-        
-        private int M;    // meaningful observation count
-        private int C;    // overall observation count
-        private double P; // probability of occupancy
-        
         public GridCell(int x, int y) {
             this.x = x;
             this.y = y;
-            this.M = 0;
-            this.C = 0;
-            this.P = 0;
-            this.visited = false;
-        }
-        
-        private void CalculateOccupancyProbability() {
-            int dn = 2 * this.C;
-
-            if (dn == 0) {
-                this.P = 0;
-                return;
-            }
-
-            double v = (double) (this.M + this.C) / dn;
-            v = v > 1 ? 1 : v;
-            v = v < 0 ? 0 : v;
-
-            this.P = v;
-        }
-
-        private void seen() {
-            this.C = this.C + 1;
         }
 
         public void occupied() {
-            seen();
-            this.M = this.M + 1;
+            observe(x, y, true);
         }
 
         public void unoccupied() {
-            seen();
-            this.M = this.M - 1;
+            observe(x, y, false);
         }
         
         public void setVisited(boolean b) {
-            this.visited = b;
+            visit(x, y, b);
         }
         
         public int getM() {
-            return this.M;
+            return storage.getM(x, y);
         }
 
         public int getC() {
-            return this.C;
+            return storage.getC(x, y);
         }
 
         public double getP() {
-            CalculateOccupancyProbability();
-            return this.P;
+            return storage.getP(x, y);
         }
         
         public boolean isVisited() {
-            return this.visited;
+            return storage.isVisited(x, y);
+        }
+        
+        public boolean isScanned() {
+            return storage.isScanned(x, y);
         }
         
         public boolean isNextToWall() {
@@ -95,62 +89,336 @@ public class OccupancyGrid implements Serializable {
             System.out.println("[" + this.x + "][" + this.y + "] = " + "{ M=" + getM() + ", C=" + getC() + " } with Pr("
                     + getP() + ")");
         }
-    }
         
-    private GridCell[][] grid;
+        @Override
+        public boolean equals(Object o) {
+            if ( !(o instanceof GridCell) )
+                return false;
+            
+            GridCell other = (GridCell) o;
+            return other.x == this.x && other.y == this.y;
+        }
+        
+        @Override
+        public int hashCode() {
+            return index(x, y);
+        }
+    }
+    
+    private GridStorage storage;  // state of the cells
+    private OccupancyModel model; // turns observations into probabilities
+    private IndexSet frontier;    // free, scanned, unvisited cells (kept up to date on every update)
+    private volatile double freeCellDeterminant = FREE_CELL_DETERMINANT; // cells with a lower probability are free
+    
+    // Change tracking
+    public static final int CHANGE_LOG_SIZE = 256; // (power of 2)
+    private ChangeLog changes;    // version (incremented on every cell change) and the last changed cell indices
+    
+    // Snapshots
+    private final boolean readOnly;                 // snapshots can't be modified
+    private transient volatile OccupancyGrid snapshot; // last published snapshot (for reader threads)
 
     public OccupancyGrid(int w, int h) {
-        this.WIDTH  = w;
-        this.HEIGHT = h;
+        this(w, h, new CountingOccupancyModel());
+    }
+    
+    /**
+     * Creates the best suited grid for the given size.
+     * Grids that fit in 64 cells (e.g. the 7x6 competition arena) use the bitboard grid.
+     * @param w
+     * @param h
+     * @return
+     */
+    public static OccupancyGrid create(int w, int h) {
+        if ( w * h <= BitboardOccupancyGrid.MAX_CELLS )
+            return new BitboardOccupancyGrid(w, h);
+        
+        return new OccupancyGrid(w, h);
+    }
+    
+    public OccupancyGrid(int w, int h, OccupancyModel model) {
+        this(w, h, model, new ArrayGridStorage(w, h));
+    }
+    
+    /**
+     * Creates a grid of (w x h) cells on top of the given storage.
+     * @param w
+     * @param h
+     * @param model
+     * @param storage
+     */
+    public OccupancyGrid(int w, int h, OccupancyModel model, GridStorage storage) {
+        this(w, h, model, storage, new ArrayChangeLog(CHANGE_LOG_SIZE));
+    }
+    
+    /**
+     * Creates a grid of (w x h) cells on top of the given storage and change log.
+     * @param w
+     * @param h
+     * @param model
+     * @param storage
+     * @param changes
+     */
+    protected OccupancyGrid(int w, int h, OccupancyModel model, GridStorage storage, ChangeLog changes) {
+        this.WIDTH     = w;
+        this.HEIGHT    = h;
+        this.model     = model;
+        this.storage   = storage;
+        this.frontier  = new IndexSet();
+        this.changes   = changes;
+        this.readOnly  = false;
         
         this.DIRECTIONS = new int[4];
-        this.grid 		= new GridCell[w][h];
         
         DIRECTIONS[0] = 0;
         DIRECTIONS[1] = 180;  
         DIRECTIONS[2] = 270; 
         DIRECTIONS[3] = 90; 
         
-        // Initialise grid with grid cells objects
-        for (int row = 0; row < this.WIDTH; row++) {
-            for (int col = 0; col < this.HEIGHT; col++) {
-                grid[row][col] = new GridCell(row, col);
-            }
-        }
+        publish();
     }
     
+    /**
+     * Creates an independent copy of a grid.
+     * Must be called from the thread writing to the grid, other threads should use getSnapshot()!
+     * @param cgrid
+     */
     public OccupancyGrid(OccupancyGrid cgrid) {
-        this.WIDTH  = cgrid.WIDTH;
-        this.HEIGHT = cgrid.HEIGHT;
+        this(cgrid, false);
+    }
+    
+    private OccupancyGrid(OccupancyGrid cgrid, boolean readOnly) {
+        this.WIDTH      = cgrid.WIDTH;
+        this.HEIGHT     = cgrid.HEIGHT;
         this.DIRECTIONS = cgrid.DIRECTIONS;
-        this.grid = cgrid.grid;
+        this.storage    = cgrid.storage.copy();
+        this.model      = cgrid.model;
+        this.frontier   = new IndexSet(cgrid.frontier);
+        this.freeCellDeterminant = cgrid.freeCellDeterminant;
+        this.changes    = cgrid.changes.copy();
+        this.readOnly   = readOnly;
     }
     
     /**
-     * Returns a grid cell object at a specified position.
+     * Publishes an immutable snapshot of the current state for reader threads.
+     * Must be called by the thread writing to the grid, at a point where the map is consistent
+     * (e.g. after a scan or a move). Does nothing if the grid did not change since the last snapshot.
+     */
+    public void publishSnapshot() {
+        publish();
+    }
+    
+    private void publish() {
+        OccupancyGrid s = snapshot;
+        
+        if ( readOnly || (s != null && s.changes.getVersion() == changes.getVersion()) )
+            return;
+        
+        snapshot = new OccupancyGrid(this, true);
+    }
+    
+    /**
+     * Returns the last published snapshot of the grid.
+     * Safe to call from any thread without locking, the snapshot never changes.
+     * @return
+     */
+    public OccupancyGrid getSnapshot() {
+        return readOnly ? this : snapshot;
+    }
+    
+    /**
+     * Returns if the grid is a (read only) snapshot.
+     * @return
+     */
+    public boolean isSnapshot() {
+        return readOnly;
+    }
+    
+    private void checkWritable() {
+        if ( readOnly )
+            throw new UnsupportedOperationException("Occupancy grid snapshots are read only");
+    }
+    
+    /**
+     * Returns the unique index of a cell position (x * HEIGHT + y).
+     * @param x
+     * @param y
+     * @return
+     */
+    public int index(int x, int y) {
+        return x * HEIGHT + y;
+    }
+    
+    /**
+     * Returns if a position is inside the grid.
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < WIDTH && y < HEIGHT;
+    }
+    
+    /**
+     * Returns the sensor model used to update the grid.
+     * @return
+     */
+    public OccupancyModel getModel() {
+        return model;
+    }
+    
+    /**
+     * Returns the probability from which on a cell counts as blocked.
+     * @return
+     */
+    public double getFreeCellDeterminant() {
+        return freeCellDeterminant;
+    }
+    
+    /**
+     * Sets the probability from which on a cell counts as blocked and reclassifies the cells
+     * (only the ones that flip are logged as changed, so planners following the grid pick them up).
+     * @param p
+     */
+    public void setFreeCellDeterminant(double p) {
+        checkWritable();
+        
+        double old          = freeCellDeterminant;
+        freeCellDeterminant = p;
+        
+        for (int x = 0; x < WIDTH; x++)
+            for (int y = 0; y < HEIGHT; y++) {
+                double cellP = storage.getP(x, y);
+                if ( (cellP >= old) != isBlocked(cellP) )
+                    cellChanged(x, y);
+            }
+    }
+    
+    /**
+     * Returns if a probability means blocked.
+     * @param p
+     * @return
+     */
+    public boolean isBlocked(double p) {
+        return p >= freeCellDeterminant;
+    }
+    
+    /**
+     * Returns the version of the grid, incremented on every cell change.
+     * @return
+     */
+    public long getVersion() {
+        return changes.getVersion();
+    }
+    
+    /**
+     * Returns the (distinct, sorted) indices of the cells that changed since a version.
+     * Returns null if too many changes happened since then (the log only holds the last CHANGE_LOG_SIZE), 
+     * in that case everything must be considered changed.
+     * @param since
+     * @return
+     */
+    public int[] changesSince(long since) {
+        return changes.changesSince(since);
+    }
+    
+    /**
+     * Returns the storage backend of the grid.
+     * @return
+     */
+    public GridStorage getStorage() {
+        return storage;
+    }
+    
+    /**
+     * Registers an observation of a cell and refreshes its cached probability.
+     * @param x
+     * @param y
+     * @param occupied
+     */
+    protected void observe(int x, int y, boolean occupied) {
+        checkWritable();
+        
+        int c = storage.getC(x, y) + 1;
+        int m = occupied ? storage.getM(x, y) + 1 : storage.getM(x, y) - 1;
+        
+        storage.store(x, y, m, c, model.update(storage.getP(x, y), m, c, occupied));
+        cellChanged(x, y);
+    }
+    
+    /**
+     * Sets the visited flag of a cell.
+     * @param x
+     * @param y
+     * @param b
+     */
+    protected void visit(int x, int y, boolean b) {
+        checkWritable();
+        
+        storage.setVisited(x, y, b);
+        cellChanged(x, y);
+    }
+    
+    /**
+     * Called after the state of a cell changed (observation or visit).
+     * Logs the change, adds/removes the cell from the frontier, subclasses can extend it to keep their own indices up to date.
+     * @param x
+     * @param y
+     */
+    protected void cellChanged(int x, int y) {
+        changes.add(index(x, y));
+        updateFrontier(x, y);
+    }
+    
+    /**
+     * Adds/removes a cell from the frontier, after its state changed.
+     * @param x
+     * @param y
+     */
+    protected void updateFrontier(int x, int y) {
+        if ( isFrontierCell(x, y) )
+            frontier.add(index(x, y));
+        else
+            frontier.remove(index(x, y));
+    }
+    
+    /**
+     * Returns if the stored state of a cell makes it part of the frontier (free, scanned, unvisited).
      * @param x
      * @param y
      * @return
      */
+    protected boolean isFrontierCell(int x, int y) {
+        return storage.isScanned(x, y) && !isBlocked(storage.getP(x, y)) && !storage.isVisited(x, y);
+    }
+    
+    /**
+     * Returns a grid cell object at a specified position.
+     * @param x
+     * @param y
+     * @return null if the position is outside the grid
+     */
     public GridCell getCell(int x, int y) {
-        return this.grid[x][y];
+        if ( !contains(x, y) )
+            return null;
+        
+        return new GridCell(x, y);
     }
     
     /**
-     * Returns the Grid Cell array
+     * Returns the Grid Cell array (views are created on each call!)
      * @return
      */
     public GridCell[][] getCells() {
-        return this.grid;
+        GridCell[][] cells = new GridCell[WIDTH][HEIGHT];
+        for (int row = 0; row < this.WIDTH; row++)
+            for (int col = 0; col < this.HEIGHT; col++)
+                cells[row][col] = new GridCell(row, col);
+        return cells;
     }
     
     public int getNumVisits() {
-        int total = 0;
-        for (int row = 0; row < this.WIDTH; row++)
-            for (int col = 0; col < this.HEIGHT; col++)
-                if ( grid[row][col].isVisited() )
-                    total += 1;
-        return total;
+        return storage.countVisited();
     }
     /**
      * Calculates the (mapped angle) from one cell to another based on their position.
@@ -179,6 +447,61 @@ public class OccupancyGrid implements Serializable {
         return map_ang;
     }
     
+    /**
+     * Casts a sensor ray from the centre of a cell and updates every cell it crosses (DDA grid traversal):
+     * the cells before the end point are marked unoccupied, the cell containing the end point is marked
+     * occupied if the ray hit something (unoccupied otherwise), cells beyond it are left unknown.
+     * The origin cell is not updated and the ray stops at the grid border.
+     * @param from     origin cell
+     * @param mapAngle direction of the ray (mapped angle, see getAngleToCell)
+     * @param range    length of the ray in cells (from the centre of the origin cell)
+     * @param hit      if the ray ended on an obstacle (false for readings at/over the sensor range)
+     * @return the number of cells updated
+     */
+    public int castRay(GridCell from, float mapAngle, float range, boolean hit) {
+        double dx = Math.sin(Math.toRadians(mapAngle)); // 90 = right (+x)
+        double dy = Math.cos(Math.toRadians(mapAngle)); // 0  = up (+y)
+        
+        int x     = from.x;
+        int y     = from.y;
+        int stepX = dx > 0 ? 1 : -1;
+        int stepY = dy > 0 ? 1 : -1;
+        
+        // distance along the ray between two vertical/horizontal cell borders, and to the next ones
+        double deltaX = dx == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dx);
+        double deltaY = dy == 0 ? Double.POSITIVE_INFINITY : Math.abs(1 / dy);
+        double nextX  = deltaX / 2;
+        double nextY  = deltaY / 2;
+        int updated   = 0;
+        
+        while (true) {
+            double enter; // distance at which the ray enters the next cell
+            
+            if ( nextX < nextY ) {
+                enter  = nextX;
+                x     += stepX;
+                nextX += deltaX;
+            } else {
+                enter  = nextY;
+                y     += stepY;
+                nextY += deltaY;
+            }
+            
+            if ( enter >= range || !contains(x, y) )
+                break;
+            
+            boolean last = Math.min(nextX, nextY) >= range;
+            
+            observe(x, y, last && hit);
+            updated += 1;
+            
+            if ( last )
+                break;
+        }
+        
+        return updated;
+    }
+    
     /**
      * Returns a string of the state of the occupancy grid!
      * @return
@@ -188,10 +511,9 @@ public class OccupancyGrid implements Serializable {
         for (int row = 0; row < this.WIDTH; row++) {
             String istring = "";
             for (int col = 0; col < this.HEIGHT; col++) {
-                GridCell gc = grid[row][col];
                 String prefix = col == 0 ? "[" : "";
                 String postfix = col + 1 == this.HEIGHT ? "]" : "|";
-                istring = istring + String.format("%s%.1f%s", prefix, gc.getP(), postfix);
+                istring = istring + String.format("%s%.1f%s", prefix, storage.getP(row, col), postfix);
             }
             rstring.add(istring);
         }
@@ -207,10 +529,9 @@ public class OccupancyGrid implements Serializable {
         for (int row = 0; row < this.WIDTH; row++) {
             String istring = "";
             for (int col = 0; col < this.HEIGHT; col++) {
-                GridCell gc = grid[row][col];
                 String prefix = col == 0 ? "[" : "";
                 String postfix = col + 1 == this.HEIGHT ? "]" : "|";
-                istring = istring + String.format("%s%s%s", prefix, Boolean.toString(gc.isVisited()).substring(0,1).toUpperCase(), postfix);
+                istring = istring + String.format("%s%s%s", prefix, Boolean.toString(storage.isVisited(row, col)).substring(0,1).toUpperCase(), postfix);
             }
             rstring.add(istring);
         }
@@ -218,95 +539,108 @@ public class OccupancyGrid implements Serializable {
     }
     
     /**
-     * Returns an array list of GridCells that neighbour the parameter.
-     * @param cell
+     * Returns if a cell matches one of the neighbour filters.
+     * @param x
+     * @param y
+     * @param filter
      * @return
      */
-    public ArrayList<GridCell> getNeighbours(GridCell cell) {
-        ArrayList<GridCell> neighbours = new ArrayList<GridCell>();
-
-        int up    = cell.y + 1;
-        int down  = cell.y - 1;
-        int left  = cell.x - 1;
-        int right = cell.x + 1;
-
-        if (up >= 0 && up < HEIGHT)
-            neighbours.add(grid[cell.x][up]);
-
-        if (down >= 0 && down < HEIGHT)
-            neighbours.add(grid[cell.x][down]);
-
-        if (left >= 0 && left < WIDTH)
-            neighbours.add(grid[left][cell.y]);
-
-        if (right >= 0 && right < WIDTH)
-            neighbours.add(grid[right][cell.y]);
-
-        return neighbours;
+    protected boolean matches(int x, int y, int filter) {
+        switch (filter) {
+            case NEIGHBOUR_BLOCKED:
+                return isBlocked(storage.getP(x, y));
+            case NEIGHBOUR_UNVISITED:
+                return !storage.isVisited(x, y);
+            case NEIGHBOUR_FREE_UNVISITED:
+                return !isBlocked(storage.getP(x, y)) && !storage.isVisited(x, y);
+            default:
+                return true;
+        }
     }
     
     /**
-     * Returns an array list of blocked GridCells that neighbour the parameter.
-     * @param cell
+     * Returns a 4-bit mask (DIR_UP | DIR_DOWN | DIR_LEFT | DIR_RIGHT) of the neighbours of a cell
+     * that are inside the grid and match the filter. Does not allocate.
+     * @param x
+     * @param y
+     * @param filter one of the NEIGHBOUR_* constants
      * @return
      */
-    public ArrayList<GridCell> getBlockNeighbours(GridCell cell) {
-        ArrayList<GridCell> neighbours = new ArrayList<GridCell>();
+    public int getNeighbourMask(int x, int y, int filter) {
+        int mask = 0;
         
-        int up    = cell.y + 1;
-        int down  = cell.y - 1;
-        int left  = cell.x - 1;
-        int right = cell.x + 1;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DIR_X[d];
+            int ny = y + DIR_Y[d];
+            
+            if ( contains(nx, ny) && matches(nx, ny, filter) )
+                mask |= 1 << d;
+        }
         
-        boolean  c1;
-        if (up >= 0 && up < HEIGHT)
-            c1 = grid[cell.x][up].getP() >= FREE_CELL_DETERMINANT ? neighbours.add(grid[cell.x][up]) : false;
+        return mask;
+    }
+    
+    /**
+     * Writes the indices of the neighbours of a cell that match the filter into a caller supplied buffer
+     * (order: up, down, left, right). Does not allocate.
+     * @param x
+     * @param y
+     * @param filter one of the NEIGHBOUR_* constants
+     * @param out buffer of at least 4 ints
+     * @return the number of neighbours written
+     */
+    public int getNeighbours(int x, int y, int filter, int[] out) {
+        int mask = getNeighbourMask(x, y, filter);
+        int n    = 0;
         
-        boolean c2;
-        if (down >= 0 && down < HEIGHT)
-            c2 = grid[cell.x][down].getP() >= FREE_CELL_DETERMINANT ? neighbours.add(grid[cell.x][down]) : false;
+        for (int d = 0; d < 4; d++)
+            if ( (mask & (1 << d)) != 0 )
+                out[n++] = index(x + DIR_X[d], y + DIR_Y[d]);
         
-        boolean c3;
-        if (left >= 0 && left < WIDTH)
-            c3 = grid[left][cell.y].getP() >= FREE_CELL_DETERMINANT ? neighbours.add(grid[left][cell.y]) : false;
+        return n;
+    }
+    
+    /**
+     * Converts a neighbour mask of a cell into a list of GridCells.
+     * @param cell
+     * @param mask
+     * @return
+     */
+    private ArrayList<GridCell> toCells(GridCell cell, int mask) {
+        ArrayList<GridCell> neighbours = new ArrayList<GridCell>(4);
+        
+        for (int d = 0; d < 4; d++)
+            if ( (mask & (1 << d)) != 0 )
+                neighbours.add(getCell(cell.x + DIR_X[d], cell.y + DIR_Y[d]));
         
-        boolean c4;
-        if (right >= 0 && right < WIDTH)
-            c4 = grid[right][cell.y].getP() >= FREE_CELL_DETERMINANT ? neighbours.add(grid[right][cell.y]) : false;
-
         return neighbours;
     }
     
+    /**
+     * Returns an array list of GridCells that neighbour the parameter.
+     * @param cell
+     * @return
+     */
+    public ArrayList<GridCell> getNeighbours(GridCell cell) {
+        return toCells(cell, getNeighbourMask(cell.x, cell.y, NEIGHBOUR_ANY));
+    }
+    
+    /**
+     * Returns an array list of blocked GridCells that neighbour the parameter.
+     * @param cell
+     * @return
+     */
+    public ArrayList<GridCell> getBlockNeighbours(GridCell cell) {
+        return toCells(cell, getNeighbourMask(cell.x, cell.y, NEIGHBOUR_BLOCKED));
+    }
+    
     /**
      * Returns an array list of to-scan GridCells that neighbour the parameter.
      * @param cell
      * @return
      */
     public ArrayList<GridCell> getScanNeighbours(GridCell cell) {
-        ArrayList<GridCell> neighbours = new ArrayList<GridCell>();
-
-        int up    = cell.y + 1;
-        int down  = cell.y - 1;
-        int left  = cell.x - 1;
-        int right = cell.x + 1;
-
-        boolean  c1;
-        if (up >= 0 && up < HEIGHT)
-            c1 = !grid[cell.x][up].isVisited() ? neighbours.add(grid[cell.x][up]) : false;
-        
-        boolean c2;
-        if (down >= 0 && down < HEIGHT)
-            c2 = !grid[cell.x][down].isVisited() ? neighbours.add(grid[cell.x][down]) : false;
-        
-        boolean c3;
-        if (left >= 0 && left < WIDTH)
-            c3 = !grid[left][cell.y].isVisited() ? neighbours.add(grid[left][cell.y]) : false;
-        
-        boolean c4;
-        if (right >= 0 && right < WIDTH)
-            c4 = !grid[right][cell.y].isVisited() ? neighbours.add(grid[right][cell.y]) : false;
-
-        return neighbours;
+        return toCells(cell, getNeighbourMask(cell.x, cell.y, NEIGHBOUR_UNVISITED));
     }
     
     /**
@@ -315,49 +649,65 @@ public class OccupancyGrid implements Serializable {
      * @return
      */
     public ArrayList<GridCell> getFreeUnvisitedNeighbours(GridCell cell) {
-        ArrayList<GridCell> neighbours = new ArrayList<GridCell>();
-
-        int up    = cell.y + 1;
-        int down  = cell.y - 1;
-        int left  = cell.x - 1;
-        int right = cell.x + 1;
-        
-        boolean  c1;
-        if (up >= 0 && up < HEIGHT)
-            c1 = grid[cell.x][up].getP() < FREE_CELL_DETERMINANT && !grid[cell.x][up].isVisited() ? neighbours.add(grid[cell.x][up]) : false;
-        
-        boolean c2;
-        if (down >= 0 && down < HEIGHT)
-            c2 = grid[cell.x][down].getP() < FREE_CELL_DETERMINANT && !grid[cell.x][down].isVisited() ? neighbours.add(grid[cell.x][down]) : false;
-        
-        boolean c3;
-        if (left >= 0 && left < WIDTH)
-            c3 = grid[left][cell.y].getP() < FREE_CELL_DETERMINANT && !grid[left][cell.y].isVisited() ? neighbours.add(grid[left][cell.y]) : false;
-        
-        boolean c4;
-        if (right >= 0 && right < WIDTH)
-            c4 = grid[right][cell.y].getP() < FREE_CELL_DETERMINANT && !grid[right][cell.y].isVisited() ? neighbours.add(grid[right][cell.y]) : false;
-
-        return neighbours;
+        return toCells(cell, getNeighbourMask(cell.x, cell.y, NEIGHBOUR_FREE_UNVISITED));
+    }
+    
+    /**
+     * Returns if a cell is part of the frontier (free, scanned but not visited).
+     * @param cell
+     * @return
+     */
+    public boolean isFrontier(GridCell cell) {
+        return frontier.contains(index(cell.x, cell.y));
+    }
+    
+    /**
+     * Returns the number of free, scanned, unvisited cells.
+     * @return
+     */
+    public int getFrontierSize() {
+        return frontier.size();
     }
     
     /**
-     * Calculates and returns across the whole grid free, scanned, unvisited cells.
-     * Used for path-finding.
+     * Returns if the map is complete (there are no free, scanned, unvisited cells left).
+     * @return
+     */
+    public boolean isMapComplete() {
+        return getFrontierSize() == 0;
+    }
+    
+    /**
+     * Returns across the whole grid free, scanned, unvisited cells.
+     * Used for path-finding. (Read from the frontier index, no full grid sweep)
      * @return
      */
     public ArrayList<GridCell> calculateScannedUnvisited() {
-        ArrayList<GridCell> scanned_unvisited = new ArrayList<GridCell>();
+        int[] indices = frontier.toSortedArray();
+        ArrayList<GridCell> scanned_unvisited = new ArrayList<GridCell>(indices.length);
         
-        for (int row = 0; row < this.WIDTH; row++) {
-            for (int col = 0; col < this.HEIGHT; col++) {
-                GridCell gc = grid[row][col];
-                if ( gc.getP() < FREE_CELL_DETERMINANT && !gc.isVisited() && gc.getC() > 0 ) {
-                    scanned_unvisited.add(gc);
-                }
-            }
-        }
+        for (int i : indices)
+            scanned_unvisited.add(getCell(i / HEIGHT, i % HEIGHT));
         
         return scanned_unvisited;
     }
+    
+    /**
+     * Returns the free, scanned, unvisited cells ordered by (manhattan) distance from a cell.
+     * @param from
+     * @return
+     */
+    public ArrayList<GridCell> getFrontier(final GridCell from) {
+        ArrayList<GridCell> cells = calculateScannedUnvisited();
+        
+        Collections.sort(cells, new Comparator<GridCell>() {
+            public int compare(GridCell c1, GridCell c2) {
+                int d1 = Math.abs(c1.x - from.x) + Math.abs(c1.y - from.y);
+                int d2 = Math.abs(c2.x - from.x) + Math.abs(c2.y - from.y);
+                return d1 - d2;
+            }
+        });
+        
+        return cells;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package libs;
+import java.io.Serializable;
+
+/**
+ * Sensor model used by the occupancy grid to turn observations into a probability of occupancy.
+ * The grid calls it once per observation and caches the result, so reading a probability never
+ * goes through the model.
+ */
+public interface OccupancyModel extends Serializable {
+    /**
+     * Returns the new probability of occupancy of a cell after an observation.
+     * @param p        cached probability before the observation (0 if the cell was never seen)
+     * @param m        meaningful observation count (already including this observation)
+     * @param c        overall observation count (already including this observation)
+     * @param occupied whether the observation reported the cell as occupied
+     * @return
+     */
+    public double update( double p, int m, int c, boolean occupied );
+}
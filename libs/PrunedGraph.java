@@ -0,0 +1,18 @@
+package libs;
+
+/**
+ * An IntGraph that can prune the successors of a node knowing where it was reached from and where the 
+ * search is going (e.g. jump point search). AStarSearch uses successors() instead of neighbours() for 
+ * single goal searches on such graphs, the successors don't have to be adjacent nodes as long as cost() 
+ * gives the cost of getting there.
+ */
+public interface PrunedGraph extends IntGraph {
+    /**
+     * Passes the successors of a node to the visitor.
+     * @param id
+     * @param parent node id was reached from (-1 for the start)
+     * @param goal
+     * @param visitor
+     */
+    void successors(int id, int parent, int goal, IntGraph.NeighbourVisitor visitor);
+}
@@ -0,0 +1,195 @@
+package libs;
+
+/**
+ * Connected components (union-find) of the passable cells of a 4-connected grid, answers if a cell can be
+ * reached from another without searching.
+ *
+ * A cell becoming passable gets a new union-find node merged with its passable neighbours straight away.
+ * A cell becoming blocked can split its component, which union-find can't undo: unless it had at most one
+ * passable neighbour (nothing goes through it) the components are rebuilt on the next query. The old node of
+ * a blocked cell is left behind, so nodes run out after many changes, which also means a rebuild.
+ * Moving into a cell needs it to be passable, the cell moved out of doesn't (like the planners).
+ * Cells are indexed like the occupancy grid (x*HEIGHT+y).
+ */
+public class ReachabilityIndex {
+    public final int WIDTH;
+    public final int HEIGHT;
+
+    private final boolean[] passable;
+    private final int[] node;   // union-find node of every cell
+    private final int[] parent; // of the nodes
+    private final int[] rank;
+    private int nodes;          // nodes in use
+    private boolean stale;      // a block may have split a component
+    private int rebuilds;       // number of rebuilds so far
+
+    public ReachabilityIndex( int w, int h ) {
+        this.WIDTH    = w;
+        this.HEIGHT   = h;
+        this.passable = new boolean[w * h];
+        this.node     = new int[w * h];
+        this.parent   = new int[2 * w * h];
+        this.rank     = new int[2 * w * h];
+
+        rebuild();
+    }
+
+    /**
+     * Replaces the passability of every cell and rebuilds the components.
+     * @param cells
+     */
+    public void rebuild( boolean[] cells ) {
+        System.arraycopy(cells, 0, passable, 0, passable.length);
+        rebuild();
+    }
+
+    /**
+     * Rebuilds the components from scratch.
+     */
+    public void rebuild() {
+        nodes = 0;
+        for (int i = 0; i < passable.length; i++)
+            node[i] = newNode();
+
+        for (int i = 0; i < passable.length; i++) {
+            if ( !passable[i] )
+                continue;
+
+            // right and up neighbours, the other two link to this one
+            if ( i / HEIGHT < WIDTH - 1 && passable[i + HEIGHT] ) union(i, i + HEIGHT);
+            if ( i % HEIGHT < HEIGHT - 1 && passable[i + 1] )     union(i, i + 1);
+        }
+
+        stale     = false;
+        rebuilds += 1;
+    }
+
+    public boolean isPassable( int i ) {
+        return passable[i];
+    }
+
+    /**
+     * Sets if a cell can be moved into and updates the components.
+     * @param i cell index
+     * @param b
+     */
+    public void setPassable( int i, boolean b ) {
+        if ( passable[i] == b )
+            return;
+
+        passable[i] = b;
+
+        if ( b ) {
+            if ( stale ) // merged with everything on the rebuild
+                return;
+
+            if ( nodes == parent.length ) {
+                stale = true;
+                return;
+            }
+
+            node[i] = newNode();
+
+            int x = i / HEIGHT, y = i % HEIGHT;
+            if ( x > 0 && passable[i - HEIGHT] )          union(i, i - HEIGHT);
+            if ( x < WIDTH - 1 && passable[i + HEIGHT] )  union(i, i + HEIGHT);
+            if ( y > 0 && passable[i - 1] )               union(i, i - 1);
+            if ( y < HEIGHT - 1 && passable[i + 1] )      union(i, i + 1);
+        } else if ( countPassableNeighbours(i) > 1 ) {
+            stale = true;
+        }
+    }
+
+    private int countPassableNeighbours( int i ) {
+        int x = i / HEIGHT, y = i % HEIGHT, count = 0;
+
+        if ( x > 0 && passable[i - HEIGHT] )          count++;
+        if ( x < WIDTH - 1 && passable[i + HEIGHT] )  count++;
+        if ( y > 0 && passable[i - 1] )               count++;
+        if ( y < HEIGHT - 1 && passable[i + 1] )      count++;
+
+        return count;
+    }
+
+    /**
+     * Returns the component (an id shared by all of its cells) of a passable cell, -1 if it is blocked.
+     * @param i cell index
+     * @return
+     */
+    public int getComponent( int i ) {
+        if ( stale )
+            rebuild();
+
+        return passable[i] ? find(node[i]) : -1;
+    }
+
+    /**
+     * Returns if a cell can be reached from another.
+     * @param from cell index (does not have to be passable)
+     * @param to cell index
+     * @return
+     */
+    public boolean canReach( int from, int to ) {
+        if ( from == to )
+            return true;
+
+        int target = getComponent(to);
+        if ( target == -1 )
+            return false;
+
+        if ( passable[from] )
+            return find(node[from]) == target;
+
+        // first move out of a blocked cell
+        int x = from / HEIGHT, y = from % HEIGHT;
+        return (x > 0 && getComponent(from - HEIGHT) == target)
+            || (x < WIDTH - 1 && getComponent(from + HEIGHT) == target)
+            || (y > 0 && getComponent(from - 1) == target)
+            || (y < HEIGHT - 1 && getComponent(from + 1) == target);
+    }
+
+    /**
+     * Returns how many times the components were rebuilt from scratch.
+     * @return
+     */
+    public int getRebuilds() {
+        return rebuilds;
+    }
+
+    private int newNode() {
+        parent[nodes] = nodes;
+        rank[nodes]   = 0;
+
+        return nodes++;
+    }
+
+    private int find( int i ) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]]; // path halving
+            i         = parent[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Merges the components of two cells.
+     */
+    private void union( int i, int j ) {
+        int a = find(node[i]);
+        int b = find(node[j]);
+
+        if ( a == b )
+            return;
+
+        if ( rank[a] < rank[b] ) {
+            int t = a;
+            a     = b;
+            b     = t;
+        }
+
+        parent[b] = a;
+        if ( rank[a] == rank[b] )
+            rank[a] += 1;
+    }
+}
@@ -0,0 +1,255 @@
+package libs;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plans paths that take the least time to drive rather than the fewest cells.
+ *
+ * Every change of direction costs a rotation (and a stop) which takes longer than driving a cell straight on,
+ * so the search state is (cell, heading): driving forward moves to the next cell in the heading, turning changes
+ * the heading in place. The costs are times in seconds for a cell, a 90 degree turn and a 180 degree turn,
+ * they can be derived from the pilot speeds and then corrected with measured timings (observeTravel/observeTurn).
+ *
+ * Headings use the map angles of OccupancyGrid.getAngleToCell: 0 up (+y), 90 right (+x), 180 down, 270 left.
+ */
+public class RotationPlanner {
+    public static final int HEADING_UP    = 0;
+    public static final int HEADING_RIGHT = 1;
+    public static final int HEADING_DOWN  = 2;
+    public static final int HEADING_LEFT  = 3;
+
+    private static final int[] HEADING_X = {0, 1, 0, -1};
+    private static final int[] HEADING_Y = {1, 0, -1, 0};
+
+    private static final double CALIBRATION_WEIGHT = 0.2; // weight of a new measurement in the running averages
+
+    /**
+     * (cell, heading) states as an IntGraph: id = cell*4+heading, plus one extra node reached from
+     * any heading on the goal cell.
+     */
+    private class HeadingGraph implements IntGraph {
+        public int size() {
+            return 4 * n + 1;
+        }
+
+        public void neighbours( int id, IntGraph.NeighbourVisitor visitor ) {
+            if ( id == target )
+                return;
+
+            int cell    = id >> 2;
+            int heading = id & 3;
+            int x       = cell / HEIGHT + HEADING_X[heading];
+            int y       = cell % HEIGHT + HEADING_Y[heading];
+
+            if ( x >= 0 && y >= 0 && x < WIDTH && y < HEIGHT && resolver.isPassable(x * HEIGHT + y) )
+                visitor.visit((x * HEIGHT + y) * 4 + heading);
+
+            visitor.visit(cell * 4 + ((heading + 1) & 3));
+            visitor.visit(cell * 4 + ((heading + 3) & 3));
+            visitor.visit(cell * 4 + ((heading + 2) & 3));
+
+            if ( cell == goal )
+                visitor.visit(target);
+        }
+
+        public float cost( int from, int to ) {
+            if ( to == target )
+                return 0;
+
+            if ( from >> 2 != to >> 2 )
+                return (float) travelTime;
+
+            return (float) (((from - to) & 3) == 2 ? halfTurnTime() : turn90Time);
+        }
+
+        public float heuristic( int from, int to ) {
+            if ( from == target )
+                return 0;
+
+            int cell = from >> 2;
+            return (float) ((Math.abs(cell / HEIGHT - goal / HEIGHT) + Math.abs(cell % HEIGHT - goal % HEIGHT)) * travelTime);
+        }
+    }
+
+    public final int WIDTH;
+    public final int HEIGHT;
+
+    private final int n;
+    private final int target; // id of the extra goal node
+    private final WaypointResolver resolver;
+    private final HeadingGraph graph;
+    private final AStarSearch search;
+    private final AStarSearch.Workspace workspace;
+
+    private double travelTime;  // s per cell
+    private double turn90Time;  // s per quarter turn
+    private double turn180Time; // s per half turn
+    private int goal = -1;
+    private double predictedTime;
+
+    /**
+     * @param resolver resolver of the grid (passable cells), refresh it before planning
+     * @param travelTime seconds to drive one cell
+     * @param turn90Time seconds to turn 90 degrees
+     * @param turn180Time seconds to turn 180 degrees
+     */
+    public RotationPlanner( WaypointResolver resolver, double travelTime, double turn90Time, double turn180Time ) {
+        this.resolver    = resolver;
+        this.WIDTH       = resolver.getGrid().WIDTH;
+        this.HEIGHT      = resolver.getGrid().HEIGHT;
+        this.n           = WIDTH * HEIGHT;
+        this.target      = 4 * n;
+        this.graph       = new HeadingGraph();
+        this.search      = new AStarSearch(graph);
+        this.workspace   = search.newWorkspace();
+        this.travelTime  = travelTime;
+        this.turn90Time  = turn90Time;
+        this.turn180Time = turn180Time;
+    }
+
+    /**
+     * Creates a planner with costs derived from the pilot speeds.
+     * @param resolver
+     * @param cellDistance length of a cell (cm)
+     * @param linearSpeed pilot linear speed (cm/s)
+     * @param angularSpeed pilot angular speed (degrees/s)
+     * @param stopTime time lost stopping/starting around every move (s)
+     * @return
+     */
+    public static RotationPlanner fromSpeeds( WaypointResolver resolver, double cellDistance, double linearSpeed, double angularSpeed, double stopTime ) {
+        return new RotationPlanner(resolver, cellDistance / linearSpeed + stopTime, 90 / angularSpeed + stopTime, 180 / angularSpeed + stopTime);
+    }
+
+    /**
+     * Returns the heading (HEADING_*) closest to a map angle.
+     * @param angle degrees
+     * @return
+     */
+    public static int headingOf( float angle ) {
+        return ((Math.round(angle / 90f) % 4) + 4) % 4;
+    }
+
+    /**
+     * Updates the time per cell with a measured one.
+     * @param seconds
+     */
+    public void observeTravel( double seconds ) {
+        travelTime += CALIBRATION_WEIGHT * (seconds - travelTime);
+    }
+
+    /**
+     * Updates the time of a turn with a measured one.
+     * @param quarters number of quarter turns (1 or 2, in any direction)
+     * @param seconds
+     */
+    public void observeTurn( int quarters, double seconds ) {
+        if ( quarters == 1 )
+            turn90Time += CALIBRATION_WEIGHT * (seconds - turn90Time);
+        else if ( quarters == 2 )
+            turn180Time += CALIBRATION_WEIGHT * (seconds - turn180Time);
+    }
+
+    /**
+     * Time of turning around (never more than two quarter turns).
+     */
+    private double halfTurnTime() {
+        return Math.min(turn180Time, 2 * turn90Time);
+    }
+
+    public double getTravelTime() {
+        return travelTime;
+    }
+
+    public double getTurn90Time() {
+        return turn90Time;
+    }
+
+    public double getTurn180Time() {
+        return turn180Time;
+    }
+
+    /**
+     * Calculates the quickest path from a start cell, facing a heading, to a goal cell.
+     * @param startCell
+     * @param heading HEADING_*
+     * @param goalCell
+     * @return list of WaypointResolver nodes (start excluded), null if the goal can't be reached
+     */
+    public List<WaypointResolver.Node> calculatePath( OccupancyGrid.GridCell startCell, int heading, OccupancyGrid.GridCell goalCell ) {
+        if ( !resolver.canReach(startCell, goalCell) ) {
+            predictedTime = -1;
+            return null;
+        }
+        
+        int start = startCell.x * HEIGHT + startCell.y;
+        goal      = goalCell.x * HEIGHT + goalCell.y;
+
+        int[] states = search.findPath(start * 4 + heading, target, workspace);
+        goal         = -1;
+
+        if ( states == null ) {
+            predictedTime = -1;
+            return null;
+        }
+
+        WaypointResolver.Node[] map      = resolver.getMap();
+        List<WaypointResolver.Node> path = new ArrayList<WaypointResolver.Node>();
+        double time = 0;
+        int prev    = start * 4 + heading;
+
+        for (int state : states) {
+            if ( state == target )
+                break;
+
+            time += graph.cost(prev, state);
+            if ( state >> 2 != prev >> 2 )
+                path.add(map[state >> 2]);
+
+            prev = state;
+        }
+
+        predictedTime = time;
+        return path;
+    }
+
+    /**
+     * Returns the predicted time (s) of the last calculated path, -1 if there was none.
+     * @return
+     */
+    public double getPredictedTime() {
+        return predictedTime;
+    }
+
+    /**
+     * Predicts the time (s) driving a path (of WaypointResolver nodes) from a start cell and heading takes.
+     * @param startCell
+     * @param heading
+     * @param path
+     * @return
+     */
+    public double predictTime( OccupancyGrid.GridCell startCell, int heading, List<WaypointResolver.Node> path ) {
+        double time = 0;
+        int x = startCell.x, y = startCell.y;
+
+        for (WaypointResolver.Node node : path) {
+            OccupancyGrid.GridCell cell = node.getCell();
+
+            int next = 0;
+            while (next < 4 && (HEADING_X[next] != cell.x - x || HEADING_Y[next] != cell.y - y))
+                next++;
+
+            int turn = (next - heading) & 3;
+            if ( turn == 2 )
+                time += halfTurnTime();
+            else if ( turn != 0 )
+                time += turn90Time;
+
+            time   += travelTime;
+            heading = next;
+            x       = cell.x;
+            y       = cell.y;
+        }
+
+        return time;
+    }
+}
@@ -0,0 +1,173 @@
+package libs;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring buffer of the last timestamped samples of a sensor, written by a single thread (the sampler) and read
+ * by any number of threads without locking.
+ *
+ * The writer stores a sample in slot (written % capacity) and then publishes it by incrementing written.
+ * A reader copies the slots it needs and checks written again afterwards: slots the writer may have started
+ * overwriting in the meantime are dropped (like a seqlock). All accesses are volatile, so the check holds.
+ * Samples older than the last invalidate() (e.g. a gyro reading from before a reset) are never returned.
+ * Times are ns of the clock the sampler uses, readers get NaN when there is no (valid) sample.
+ */
+public class SampleBuffer {
+    public final int CAPACITY;
+
+    private final int mask;
+    private final AtomicLongArray slots;        // time, value bits of every slot
+    private volatile long written;              // number of samples written so far
+    private volatile long validFrom = Long.MIN_VALUE;
+
+    /**
+     * @param capacity number of samples kept (power of 2)
+     */
+    public SampleBuffer( int capacity ) {
+        if ( capacity <= 0 || (capacity & (capacity - 1)) != 0 )
+            throw new IllegalArgumentException("Sample buffer capacity must be a power of 2: " + capacity);
+
+        this.CAPACITY = capacity;
+        this.mask     = capacity - 1;
+        this.slots    = new AtomicLongArray(2 * capacity);
+    }
+
+    /**
+     * Adds a sample. Must only be called by the one thread writing to the buffer.
+     * @param time ns
+     * @param value
+     */
+    public void add( long time, float value ) {
+        long n = written;
+        int i  = 2 * ((int) n & mask);
+
+        slots.set(i, time);
+        slots.set(i + 1, Float.floatToRawIntBits(value));
+        written = n + 1; // publishes the sample
+    }
+
+    /**
+     * Drops every sample taken before a time (can be called by any thread).
+     * @param time ns
+     */
+    public void invalidate( long time ) {
+        validFrom = time;
+    }
+
+    /**
+     * Returns the number of samples written so far.
+     * @return
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Returns the value of the last sample.
+     * @return NaN if there is none
+     */
+    public float getLatest() {
+        while (true) {
+            long n = written;
+            if ( n == 0 )
+                return Float.NaN;
+
+            int i      = 2 * ((int) (n - 1) & mask);
+            long time  = slots.get(i);
+            long value = slots.get(i + 1);
+
+            if ( written - (n - 1) < CAPACITY ) // not overwritten while reading
+                return time >= validFrom ? Float.intBitsToFloat((int) value) : Float.NaN;
+        }
+    }
+
+    /**
+     * Returns the time of the last sample.
+     * @return ns, -1 if there is none
+     */
+    public long getLatestTime() {
+        while (true) {
+            long n = written;
+            if ( n == 0 )
+                return -1;
+
+            long time = slots.get(2 * ((int) (n - 1) & mask));
+
+            if ( written - (n - 1) < CAPACITY )
+                return time >= validFrom ? time : -1;
+        }
+    }
+
+    /**
+     * Returns the value of the last sample taken at or before a time (to line readings up with an event).
+     * @param time ns
+     * @return NaN if there is none (or it was overwritten already)
+     */
+    public float getAt( long time ) {
+        long[] times   = new long[CAPACITY];
+        float[] values = new float[CAPACITY];
+        int count      = copy(times, values);
+
+        for (int k = count - 1; k >= 0; k--)
+            if ( times[k] <= time )
+                return values[k];
+
+        return Float.NaN;
+    }
+
+    /**
+     * Returns the median of the samples taken in a window before now (filters out the odd bad reading,
+     * e.g. of the ultrasonic sensor). A stalled sampler gives no samples, not stale ones.
+     * @param window ns
+     * @param now ns, of the clock the samples were taken with
+     * @return NaN if there is no sample in the window
+     */
+    public float getMedian( long window, long now ) {
+        long[] times   = new long[CAPACITY];
+        float[] values = new float[CAPACITY];
+        int count      = copy(times, values);
+
+        int first = count;
+        while (first > 0 && times[first - 1] >= now - window)
+            first--;
+
+        if ( first == count )
+            return Float.NaN;
+
+        float[] window_values = Arrays.copyOfRange(values, first, count);
+        Arrays.sort(window_values);
+
+        int n = window_values.length;
+        return n % 2 == 1 ? window_values[n / 2] : (window_values[n / 2 - 1] + window_values[n / 2]) / 2;
+    }
+
+    /**
+     * Copies the valid samples still in the buffer, oldest first.
+     * @return number of samples copied
+     */
+    private int copy( long[] times, float[] values ) {
+        long end   = written;
+        long start = Math.max(0, end - CAPACITY);
+
+        for (long k = start; k < end; k++) {
+            int i                     = 2 * ((int) k & mask);
+            times[(int) (k - start)]  = slots.get(i);
+            values[(int) (k - start)] = Float.intBitsToFloat((int) slots.get(i + 1));
+        }
+
+        // drop what the writer may have overwritten while copying (all of it if it lapped the buffer), and
+        // the invalidated samples
+        long safe = Math.min(end, Math.max(start, written - CAPACITY + 1));
+        long from = validFrom;
+        int skip  = (int) (safe - start);
+
+        while (skip < end - start && times[skip] < from)
+            skip++;
+
+        int count = (int) (end - start) - skip;
+        System.arraycopy(times, skip, times, 0, count);
+        System.arraycopy(values, skip, values, 0, count);
+
+        return count;
+    }
+}
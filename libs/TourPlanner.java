@@ -0,0 +1,302 @@
+package libs;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Orders the frontier cells (free, scanned, unvisited) into a short tour from the robot's cell, so exploring
+ * does not send the robot back and forth across the arena.
+ *
+ * The tour is an open path over path distances (BFS through passable cells): built with nearest neighbour the
+ * first time, afterwards it is repaired on every refresh: cells that stopped being frontier are dropped, new ones
+ * are put where they lengthen the tour the least, then 2-opt and Or-opt moves shorten it while they can.
+ * Frontier cells that can't be reached (another connected component) are left out until they can.
+ */
+public class TourPlanner {
+    private static final int INF          = Integer.MAX_VALUE / 4;
+    private static final int MAX_PASSES   = 50; // improvement passes per refresh
+    private static final int MAX_SEGMENT  = 3;  // longest segment Or-opt moves
+
+    public final int WIDTH;
+    public final int HEIGHT;
+
+    private final WaypointResolver resolver;
+    private final int[] bfsQueue;
+
+    private int[] tour = new int[0]; // cell indices, in visiting order
+    private int length;              // length of the tour (moves) from the last refresh cell
+
+    /**
+     * @param resolver resolver of the grid (passable cells), refresh it before refreshing the tour
+     */
+    public TourPlanner( WaypointResolver resolver ) {
+        this.resolver = resolver;
+        this.WIDTH    = resolver.getGrid().WIDTH;
+        this.HEIGHT   = resolver.getGrid().HEIGHT;
+        this.bfsQueue = new int[WIDTH * HEIGHT];
+    }
+
+    /**
+     * Brings the tour up to date with the frontier of the grid, starting from the robot's cell.
+     * @param currentCell
+     */
+    public void refresh( OccupancyGrid.GridCell currentCell ) {
+        OccupancyGrid grid = resolver.getGrid();
+        int start          = currentCell.x * HEIGHT + currentCell.y;
+
+        // keep the order of the cells still in the frontier, then the new ones
+        boolean[] frontier = new boolean[WIDTH * HEIGHT];
+        for (OccupancyGrid.GridCell cell : grid.calculateScannedUnvisited())
+            frontier[cell.x * HEIGHT + cell.y] = resolver.canReach(currentCell, cell);
+
+        int[] kept  = new int[tour.length];
+        int k       = 0;
+        for (int cell : tour) {
+            if ( frontier[cell] && cell != start ) {
+                kept[k++]      = cell;
+                frontier[cell] = false;
+            }
+        }
+
+        int[] added = new int[WIDTH * HEIGHT];
+        int a       = 0;
+        for (int cell = 0; cell < frontier.length; cell++)
+            if ( frontier[cell] && cell != start )
+                added[a++] = cell;
+
+        // point 0 is the robot, then kept cells, then added ones
+        int[] points = new int[1 + k + a];
+        points[0]    = start;
+        System.arraycopy(kept, 0, points, 1, k);
+        System.arraycopy(added, 0, points, 1 + k, a);
+
+        int[][] dist = distances(points);
+
+        // reachable points only
+        int[] order = new int[points.length];
+        int size    = 1;
+        int[] fresh = new int[a];
+        int f       = 0;
+
+        for (int i = 1; i < points.length; i++) {
+            if ( dist[0][i] >= INF )
+                continue;
+
+            if ( i <= k )
+                order[size++] = i;
+            else
+                fresh[f++] = i;
+        }
+
+        if ( size == 1 )
+            size = nearestNeighbour(dist, order, fresh, f);
+        else
+            size = insertCheapest(dist, order, size, fresh, f);
+
+        improve(dist, order, size);
+
+        tour   = new int[size - 1];
+        length = 0;
+        for (int i = 1; i < size; i++) {
+            tour[i - 1] = points[order[i]];
+            length     += dist[order[i - 1]][order[i]];
+        }
+    }
+
+    /**
+     * Returns the cell to go to next, null if there is no reachable frontier cell.
+     * @return
+     */
+    public OccupancyGrid.GridCell next() {
+        return tour.length == 0 ? null : resolver.getGrid().getCell(tour[0] / HEIGHT, tour[0] % HEIGHT);
+    }
+
+    /**
+     * Returns the cells of the tour (indices, in order).
+     * @return
+     */
+    public int[] getTour() {
+        return tour.clone();
+    }
+
+    /**
+     * Returns the number of moves the tour takes from the cell of the last refresh.
+     * @return
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * BFS from every point, returns the distances between them.
+     */
+    private int[][] distances( int[] points ) {
+        int n          = WIDTH * HEIGHT;
+        int[] index    = new int[n];
+        int[] cellDist = new int[n];
+        int[][] dist   = new int[points.length][points.length];
+
+        Arrays.fill(index, -1);
+        for (int i = 0; i < points.length; i++)
+            index[points[i]] = i;
+
+        for (int i = 0; i < points.length; i++) {
+            Arrays.fill(dist[i], INF);
+            Arrays.fill(cellDist, INF);
+
+            int head = 0, tail = 0;
+            cellDist[points[i]] = 0;
+            bfsQueue[tail++]    = points[i];
+
+            while (head < tail) {
+                int v = bfsQueue[head++];
+                if ( index[v] != -1 )
+                    dist[i][index[v]] = cellDist[v];
+
+                int x = v / HEIGHT, y = v % HEIGHT;
+                if ( x > 0 )          tail = reach(v - HEIGHT, cellDist[v] + 1, cellDist, tail);
+                if ( y > 0 )          tail = reach(v - 1, cellDist[v] + 1, cellDist, tail);
+                if ( y < HEIGHT - 1 ) tail = reach(v + 1, cellDist[v] + 1, cellDist, tail);
+                if ( x < WIDTH - 1 )  tail = reach(v + HEIGHT, cellDist[v] + 1, cellDist, tail);
+            }
+        }
+
+        return dist;
+    }
+
+    private int reach( int u, int d, int[] cellDist, int tail ) {
+        if ( cellDist[u] != INF || !resolver.isPassable(u) )
+            return tail;
+
+        cellDist[u]    = d;
+        bfsQueue[tail] = u;
+
+        return tail + 1;
+    }
+
+    /**
+     * Builds the tour by always going to the closest remaining point.
+     */
+    private int nearestNeighbour( int[][] dist, int[] order, int[] fresh, int f ) {
+        boolean[] used = new boolean[dist.length];
+        int size       = 1;
+
+        for (int step = 0; step < f; step++) {
+            int last = order[size - 1], best = -1;
+
+            for (int j = 0; j < f; j++)
+                if ( !used[j] && (best == -1 || dist[last][fresh[j]] < dist[last][fresh[best]]) )
+                    best = j;
+
+            used[best]    = true;
+            order[size++] = fresh[best];
+        }
+
+        return size;
+    }
+
+    /**
+     * Puts each new point where it lengthens the tour the least (between two points or at the end).
+     */
+    private int insertCheapest( int[][] dist, int[] order, int size, int[] fresh, int f ) {
+        for (int j = 0; j < f; j++) {
+            int p         = fresh[j];
+            int bestPos   = size;
+            long bestCost = dist[order[size - 1]][p];
+
+            for (int i = 1; i < size; i++) {
+                long cost = (long) dist[order[i - 1]][p] + dist[p][order[i]] - dist[order[i - 1]][order[i]];
+                if ( cost < bestCost ) {
+                    bestCost = cost;
+                    bestPos  = i;
+                }
+            }
+
+            System.arraycopy(order, bestPos, order, bestPos + 1, size - bestPos);
+            order[bestPos] = p;
+            size += 1;
+        }
+
+        return size;
+    }
+
+    /**
+     * 2-opt (reverse a stretch) and Or-opt (move a few consecutive points elsewhere) until neither helps.
+     * order[0] (the robot) stays first, the end of the tour is free.
+     */
+    private void improve( int[][] dist, int[] order, int size ) {
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            boolean improved = false;
+
+            // 2-opt
+            for (int i = 1; i < size - 1; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    int before = dist[order[i - 1]][order[i]] + (j < size - 1 ? dist[order[j]][order[j + 1]] : 0);
+                    int after  = dist[order[i - 1]][order[j]] + (j < size - 1 ? dist[order[i]][order[j + 1]] : 0);
+
+                    if ( after < before ) {
+                        for (int l = i, r = j; l < r; l++, r--) {
+                            int t    = order[l];
+                            order[l] = order[r];
+                            order[r] = t;
+                        }
+                        improved = true;
+                    }
+                }
+            }
+
+            // Or-opt
+            for (int len = 1; len <= MAX_SEGMENT; len++) {
+                for (int i = 1; i + len <= size; i++) {
+                    int first = order[i], last = order[i + len - 1];
+                    int prev  = order[i - 1];
+                    int next  = i + len < size ? order[i + len] : -1;
+
+                    int removed = dist[prev][first] + (next != -1 ? dist[last][next] - dist[prev][next] : 0);
+
+                    // best place for the segment among the others (between a and b, or at the end)
+                    int bestGain = 0, bestAt = -1;
+                    for (int at = 0; at < size; at++) {
+                        if ( at >= i - 1 && at < i + len )
+                            continue;
+
+                        int a2 = order[at];
+                        int b2 = at + 1 < size ? order[at + 1] : -1;
+                        if ( b2 == first )
+                            continue;
+
+                        int added = dist[a2][first] + (b2 != -1 ? dist[last][b2] - dist[a2][b2] : 0);
+                        if ( removed - added > bestGain ) {
+                            bestGain = removed - added;
+                            bestAt   = at;
+                        }
+                    }
+
+                    if ( bestAt != -1 ) {
+                        moveSegment(order, size, i, len, bestAt);
+                        improved = true;
+                    }
+                }
+            }
+
+            if ( !improved )
+                break;
+        }
+    }
+
+    /**
+     * Moves order[i..i+len) right after order[at].
+     */
+    private void moveSegment( int[] order, int size, int i, int len, int at ) {
+        ArrayList<Integer> list = new ArrayList<Integer>(size);
+        for (int p = 0; p < size; p++)
+            list.add(order[p]);
+
+        int anchor = order[at];
+        ArrayList<Integer> segment = new ArrayList<Integer>(list.subList(i, i + len));
+        list.subList(i, i + len).clear();
+        list.addAll(list.indexOf(anchor) + 1, segment);
+
+        for (int p = 0; p < size; p++)
+            order[p] = list.get(p);
+    }
+}
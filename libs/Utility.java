@@ -1,4 +1,6 @@
 package libs;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 
 /**
  * Class with utility functions to make code modular.
@@ -18,4 +20,22 @@ public class Utility {
         
         return ang;
     }
+    
+    /**
+     * Returns the CPU time used by a thread so far (user + system, ms), -1 if the JVM can't measure it.
+     * @param threadId
+     * @return
+     */
+    public static long threadCpuTime(long threadId) {
+        try {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if ( !threads.isThreadCpuTimeSupported() )
+                return -1;
+            
+            long nanos = threads.getThreadCpuTime(threadId);
+            return nanos < 0 ? -1 : nanos / 1000000;
+        } catch (RuntimeException | LinkageError e) { // (no java.lang.management on this JVM)
+            return -1;
+        }
+    }
 }
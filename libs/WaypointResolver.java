@@ -1,42 +1,39 @@
 package libs;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 /**
- * This class uses the abstract AstarSearch/AstarNode classes
- * and converts them into something useful for the robot.
+ * This class adapts the occupancy grid to the generic AStarSearch (an IntGraph where node ids are 
+ * the cell indices) and converts the results into something useful for the robot.
+ * An instance can be kept for the whole run: refresh() brings the map (and the incremental 
+ * frontier planner) up to date with the cells of the grid that changed since the last call.
+ * For small arenas it can also keep an all-pairs distance table, then paths are read from 
+ * the table instead of searched for.
+ * Goals that can't be reached from the start (another connected component) are answered without searching.
  */
 public class WaypointResolver {
     /**
      * Class representing a node of the occupancy grid as a graph.
      */
-    public class Node extends AStarNode {
+    public class Node {
         private OccupancyGrid.GridCell cell;
-        private ArrayList<AStarNode> neighbours;
+        private ArrayList<Node> neighbours;
         
         public Node ( OccupancyGrid.GridCell cell ){
             this.cell = cell;
-            this.neighbours = new ArrayList<AStarNode>();
+            this.neighbours = new ArrayList<Node>();
         }
 
-        public float getCost( AStarNode node ){
-            return 1;
-        }
-
-        public float getEstimatedCost( AStarNode node ){
-            int x1 = this.cell.x;
-            int y1 = this.cell.y;
-            int x2 = ((WaypointResolver.Node)node).getCell().x;
-            int y2 = ((WaypointResolver.Node)node).getCell().y;
-
-            return Math.abs(y2-y1) + Math.abs(x2-x1);
-        }
-
-        public void addNeighbour( AStarNode node ){
+        public void addNeighbour( Node node ){
             this.neighbours.add(node);
         }
+        
+        public void clearNeighbours(){
+            this.neighbours.clear();
+        }
 
-        public List getNeighbours(){
+        public List<Node> getNeighbours(){
             return this.neighbours;
         }
 
@@ -45,39 +42,300 @@ public class WaypointResolver {
         }
     }
 
+    /**
+     * The map as seen by the search: cell indices as node ids, moves into passable cells only, unit costs.
+     */
+    private class MapGraph implements IntGraph {
+        public int size(){
+            return map.length;
+        }
+        
+        public void neighbours( int id, IntGraph.NeighbourVisitor visitor ){
+            int i = id / grid.HEIGHT;
+            int j = id % grid.HEIGHT;
+            
+            // same order as the node neighbour lists
+            if (i > 0 && planner.isPassable(id - grid.HEIGHT))               visitor.visit(id - grid.HEIGHT);
+            if (j > 0 && planner.isPassable(id - 1))                         visitor.visit(id - 1);
+            if (j < grid.HEIGHT - 1 && planner.isPassable(id + 1))           visitor.visit(id + 1);
+            if (i < grid.WIDTH - 1 && planner.isPassable(id + grid.HEIGHT))  visitor.visit(id + grid.HEIGHT);
+        }
+        
+        public float cost( int from, int to ){
+            return 1;
+        }
+        
+        public float heuristic( int from, int to ){
+            return Math.abs(from / grid.HEIGHT - to / grid.HEIGHT) + Math.abs(from % grid.HEIGHT - to % grid.HEIGHT);
+        }
+    }
+
+    public static final int SEARCH_ASTAR = 0; // plain A* over the cells
+    public static final int SEARCH_JPS   = 1; // jump point search (same path lengths, far fewer nodes on big open maps)
+
     private OccupancyGrid grid;
     private WaypointResolver.Node[] map;
+    private IntGraph graph;
+    private AStarSearch search;
+    private AStarSearch.Workspace workspace; // used by the calculate* methods
+    private JumpPointGraph jumpGraph;
+    private AStarSearch jumpSearch;
+    private AStarSearch.Workspace jumpWorkspace;
+    private int lastExpanded;
+    private DStarLite planner;  // incremental planner to the frontier
+    private DistanceTable table; // all-pairs table (null if not used)
+    private ReachabilityIndex reachability; // connected components of the passable cells
+    private long version;       // grid version the map was last synced with
     
     public WaypointResolver( OccupancyGrid grid ){
+        this(grid, false);
+    }
+    
+    /**
+     * @param grid
+     * @param allPairs keep an all-pairs distance table (at most DistanceTable.MAX_CELLS cells)
+     */
+    public WaypointResolver( OccupancyGrid grid, boolean allPairs ){
         final int GRID_SIZE = grid.HEIGHT * grid.WIDTH;
         this.map            = new Node[GRID_SIZE];
         this.grid           = grid;
+        this.planner        = new DStarLite(grid.WIDTH, grid.HEIGHT);
+        this.table          = allPairs ? new DistanceTable(grid.WIDTH, grid.HEIGHT) : null;
+        this.reachability   = new ReachabilityIndex(grid.WIDTH, grid.HEIGHT);
+        this.version        = grid.getVersion();
 
-        // convert grid to map
-        OccupancyGrid.GridCell[][] cells = grid.getCells();
-        
-        // instantiate map nodes
+        // instantiate map nodes (convert grid to map)
         for(int i=0; i < grid.WIDTH; i++){
             for(int j=0; j < grid.HEIGHT; j++){
-                this.map[(i * grid.HEIGHT) + j] = new WaypointResolver.Node(cells[i][j]);
+                this.map[(i * grid.HEIGHT) + j] = new WaypointResolver.Node(grid.getCell(i, j));
             }
         }
 
-        // add neighbours to map nodes
-        for(int i=0; i < grid.WIDTH; i++){
-            for(int j=0; j < grid.HEIGHT; j++){
-                for (int ni = Math.max(0, i - 1); ni <= Math.min(i + 1, grid.WIDTH - 1); ++ni){
-                    for (int nj = Math.max(0, j - 1); nj <= Math.min(j + 1, grid.HEIGHT - 1); ++nj){
-                        if (!(ni==i && nj==j) && !(Math.abs(ni-i) > 0 && Math.abs(nj-j) > 0)){  // don't process itself or consider diagonals 
-                            WaypointResolver.Node neighbour = this.map[ni * grid.HEIGHT + nj];
-                            if (neighbour.getCell().getP() < OccupancyGrid.FREE_CELL_DETERMINANT && neighbour.getCell().getC() > 0){ // nodes only through cells we have scanned! (safety first) 
-                                this.map[i * grid.HEIGHT + j].addNeighbour(neighbour); // In othere words, only path find on current map!
-                            }
-                        }
+        syncCells(null);
+        
+        this.graph     = new MapGraph();
+        this.search    = new AStarSearch(this.graph);
+        this.workspace = search.newWorkspace();
+        
+        this.jumpGraph = new JumpPointGraph(grid.WIDTH, grid.HEIGHT) {
+            protected boolean isPassable( int id ){
+                return planner.isPassable(id);
+            }
+        };
+        this.jumpSearch    = new AStarSearch(this.jumpGraph);
+        this.jumpWorkspace = jumpSearch.newWorkspace();
+    }
+    
+    /**
+     * Returns if a cell can be moved into.
+     * nodes only through cells we have scanned! (safety first) In othere words, only path find on current map!
+     */
+    private boolean isPassable( OccupancyGrid.GridCell cell ){
+        return !grid.isBlocked(cell.getP()) && cell.getC() > 0;
+    }
+    
+    /**
+     * (Re)builds the neighbour list of a map node.
+     */
+    private void linkNeighbours( int i, int j ){
+        WaypointResolver.Node node = this.map[i * grid.HEIGHT + j];
+        node.clearNeighbours();
+        
+        for (int ni = Math.max(0, i - 1); ni <= Math.min(i + 1, grid.WIDTH - 1); ++ni){
+            for (int nj = Math.max(0, j - 1); nj <= Math.min(j + 1, grid.HEIGHT - 1); ++nj){
+                if (!(ni==i && nj==j) && !(Math.abs(ni-i) > 0 && Math.abs(nj-j) > 0)){  // don't process itself or consider diagonals 
+                    int n = ni * grid.HEIGHT + nj;
+                    if (planner.isPassable(n)){
+                        node.addNeighbour(this.map[n]);
                     }
-                } 
+                }
+            }
+        } 
+    }
+    
+    /**
+     * Re-reads the given cells (all of them if null) from the grid and relinks the nodes around the 
+     * ones whose passability changed.
+     */
+    private void syncCells( int[] cells ){
+        int n = cells == null ? map.length : cells.length;
+        IndexSet relink = new IndexSet();
+        boolean[] all   = cells == null ? new boolean[map.length] : null;
+        
+        for (int k = 0; k < n; k++){
+            int idx                     = cells == null ? k : cells[k];
+            OccupancyGrid.GridCell cell = this.map[idx].getCell();
+            boolean passable            = isPassable(cell);
+            
+            planner.setGoal(idx, passable && !cell.isVisited()); // frontier cell
+            
+            if (cells == null)
+                all[idx] = passable;
+            else {
+                if (table != null)
+                    table.setPassable(idx, passable); // updates only the distances that change
+                
+                reachability.setPassable(idx, passable);
+            }
+            
+            if (cells == null || planner.isPassable(idx) != passable){
+                planner.setPassable(idx, passable);
+                
+                // edges into this cell changed
+                if (cell.x > 0)               relink.add(idx - grid.HEIGHT);
+                if (cell.x < grid.WIDTH - 1)  relink.add(idx + grid.HEIGHT);
+                if (cell.y > 0)               relink.add(idx - 1);
+                if (cell.y < grid.HEIGHT - 1) relink.add(idx + 1);
+            }
+        }
+        
+        for (int idx : relink.toSortedArray())
+            linkNeighbours(idx / grid.HEIGHT, idx % grid.HEIGHT);
+        
+        if (cells == null){
+            reachability.rebuild(all);
+            
+            if (table != null)
+                table.rebuild(all);
+        }
+    }
+    
+    /**
+     * Returns if a cell (by index) can be moved into, as of the last refresh.
+     * @param index
+     * @return
+     */
+    public boolean isPassable( int index ){
+        return planner.isPassable(index);
+    }
+    
+    /**
+     * Returns if a cell can be reached from another (as of the last refresh), without searching.
+     * @param startCell
+     * @param goalCell
+     * @return
+     */
+    public boolean canReach( OccupancyGrid.GridCell startCell, OccupancyGrid.GridCell goalCell ){
+        return reachability.canReach(startCell.x * grid.HEIGHT + startCell.y, goalCell.x * grid.HEIGHT + goalCell.y);
+    }
+    
+    /**
+     * Returns if any frontier (free, scanned, unvisited) cell can be reached from a cell (as of the last refresh).
+     * When this is false the lap is over, there is no need to search.
+     * @param startCell
+     * @return
+     */
+    public boolean canReachFrontier( OccupancyGrid.GridCell startCell ){
+        int pos = startCell.x * grid.HEIGHT + startCell.y;
+        
+        for (int idx = 0; idx < map.length; idx++)
+            if (planner.isGoal(idx) && reachability.canReach(pos, idx))
+                return true;
+        
+        return false;
+    }
+    
+    /**
+     * Returns the connected components of the map.
+     * @return
+     */
+    public ReachabilityIndex getReachability(){
+        return reachability;
+    }
+    
+    /**
+     * Returns the grid the map is built from.
+     * @return
+     */
+    public OccupancyGrid getGrid(){
+        return grid;
+    }
+    
+    /**
+     * Returns if paths are read from an all-pairs distance table.
+     * @return
+     */
+    public boolean usesDistanceTable(){
+        return table != null;
+    }
+    
+    /**
+     * Turns a list of cell indices into a list of nodes.
+     */
+    private List<Node> toNodes( int[] cells ){
+        if (cells == null)
+            return null;
+        
+        List<Node> path = new ArrayList<Node>();
+        for (int idx : cells)
+            path.add(this.map[idx]);
+        
+        return path;
+    }
+    
+    /**
+     * Fills in the cells between consecutive jump points (they are on straight lines).
+     */
+    private int[] expandJumps( int from, int[] jumps ){
+        if (jumps == null)
+            return null;
+        
+        int length = 0, prev = from;
+        for (int jp : jumps){
+            length += (int) jumpGraph.cost(prev, jp);
+            prev    = jp;
+        }
+        
+        int[] cells = new int[length];
+        int k       = 0;
+        prev        = from;
+        
+        for (int jp : jumps){
+            int step = jp / grid.HEIGHT != prev / grid.HEIGHT ? grid.HEIGHT : 1;
+            if (jp < prev)
+                step = -step;
+            
+            for (int c = prev + step; c != jp; c += step)
+                cells[k++] = c;
+            
+            cells[k++] = jp;
+            prev       = jp;
+        }
+        
+        return cells;
+    }
+    
+    /**
+     * Returns the path (from the table) to the closest of the goals, goals given as a bit set of cell indices.
+     */
+    private List<Node> tablePathToNearest( int from, BitSet goals ){
+        int best = -1, bestDistance = -1;
+        
+        for (int to = goals.nextSetBit(0); to >= 0; to = goals.nextSetBit(to + 1)){
+            int d = table.getDistance(from, to);
+            if (d >= 0 && (best == -1 || d < bestDistance)){
+                best         = to;
+                bestDistance = d;
             }
         }
+        
+        return best == -1 ? null : toNodes(table.getPath(from, best));
+    }
+    
+    /**
+     * Brings the map up to date with the grid, only the cells that changed since the last refresh are 
+     * looked at (everything if the grid's change log can't tell).
+     */
+    public void refresh(){
+        int[] changed = grid.changesSince(version);
+        version       = grid.getVersion();
+        
+        if (changed == null){
+            syncCells(null);
+            planner.reset();
+        } else {
+            syncCells(changed);
+        }
     }
     
     /** 
@@ -88,13 +346,136 @@ public class WaypointResolver {
      * @param goalCell
      * @return
      */
-    public List calculatePath( OccupancyGrid.GridCell startCell, OccupancyGrid.GridCell goalCell ){
-        AStarSearch search = new AStarSearch();
-        
+    public List<Node> calculatePath( OccupancyGrid.GridCell startCell, OccupancyGrid.GridCell goalCell ){
         int pos1 = startCell.x * grid.HEIGHT + startCell.y;
         int pos2 = goalCell.x * grid.HEIGHT + goalCell.y;
+        
+        if (table != null)
+            return toNodes(table.getPath(pos1, pos2));
+
 
-        return search.findPath(this.map[pos1], this.map[pos2]);
+        return calculatePath(startCell, goalCell, SEARCH_ASTAR);
+    }
+    
+    /** 
+     * Calculates the shortest path from a start cell to a goal cell with the given search 
+     * (SEARCH_ASTAR or SEARCH_JPS), never from the distance table.
+     * @param startCell
+     * @param goalCell
+     * @param algorithm
+     * @return
+     */
+    public List<Node> calculatePath( OccupancyGrid.GridCell startCell, OccupancyGrid.GridCell goalCell, int algorithm ){
+        int pos1 = startCell.x * grid.HEIGHT + startCell.y;
+        int pos2 = goalCell.x * grid.HEIGHT + goalCell.y;
+        
+        if (!reachability.canReach(pos1, pos2)){ // would search the whole component for nothing
+            lastExpanded = 0;
+            return null;
+        }
+        
+        if (algorithm == SEARCH_JPS){
+            int[] path   = expandJumps(pos1, jumpSearch.findPath(pos1, pos2, jumpWorkspace));
+            lastExpanded = jumpWorkspace.getExpanded();
+            return toNodes(path);
+        }
+        
+        int[] path   = search.findPath(pos1, pos2, workspace);
+        lastExpanded = workspace.getExpanded();
+        return toNodes(path);
+    }
+    
+    /**
+     * Calculates the shortest path from a start cell to the nearest reachable cell of the given goal cells.
+     * Unlike calling calculatePath for every goal this is a single search over the map.
+     * The goal reached is the cell of the last node in the path.
+     * @param startCell
+     * @param goalCells
+     * @return path to the nearest goal (empty if startCell is a goal), null if none of the goals is reachable
+     */
+    public List<Node> calculatePathToNearest( OccupancyGrid.GridCell startCell, List<OccupancyGrid.GridCell> goalCells ){
+        int pos      = startCell.x * grid.HEIGHT + startCell.y;
+        BitSet goals = new BitSet(map.length);
+        
+        for( OccupancyGrid.GridCell goalCell : goalCells ){
+            int idx = goalCell.x * grid.HEIGHT + goalCell.y;
+            if (reachability.canReach(pos, idx)) // unreachable goals only make the search longer
+                goals.set(idx);
+        }
+        
+        if (goals.isEmpty())
+            return null;
+        
+        if (table != null)
+            return tablePathToNearest(pos, goals);
+        
+        return toNodes(search.findPathToAny(pos, goals, workspace));
+    }
+    
+    /**
+     * Calculates the shortest path from a start cell to the nearest frontier (free, scanned, unvisited) cell.
+     * The plan is repaired incrementally (D* Lite) between calls, so after a few cells changed only the 
+     * affected part of the map is searched again. Call refresh() first so the map matches the grid.
+     * @param startCell
+     * @return path to the nearest frontier cell, null if none can be reached
+     */
+    public List<Node> calculatePathToFrontier( OccupancyGrid.GridCell startCell ){
+        int pos = startCell.x * grid.HEIGHT + startCell.y;
+        
+        if (table != null){
+            BitSet goals = new BitSet(map.length);
+            for (int idx = 0; idx < map.length; idx++)
+                if (planner.isGoal(idx))
+                    goals.set(idx);
+            
+            return tablePathToNearest(pos, goals);
+        }
+        
+        if (!canReachFrontier(startCell)) // the search would expand everything to find nothing
+            return null;
+        
+        return toNodes(planner.findPath(pos));
+    }
+    
+    /**
+     * Returns the number of nodes the last calculatePathToFrontier call expanded (0 with a distance table).
+     * @return
+     */
+    public int getLastExpanded(){
+        return table != null ? 0 : planner.getExpanded();
+    }
+    
+    /**
+     * Returns the number of nodes the last calculatePath call with an explicit search expanded.
+     * @return
+     */
+    public int getLastPathExpanded(){
+        return lastExpanded;
+    }
+    
+    /**
+     * Returns the map as a graph (node id = cell index).
+     * Searches on it (with their own AStarSearch.Workspace) can run in parallel, but not during a refresh().
+     * @return
+     */
+    public IntGraph getGraph(){
+        return graph;
+    }
+    
+    /**
+     * Returns the search used over the map graph.
+     * @return
+     */
+    public AStarSearch getSearch(){
+        return search;
+    }
+    
+    /**
+     * Returns the jump point search over the map (same rules as getGraph(), results are jump points).
+     * @return
+     */
+    public AStarSearch getJumpSearch(){
+        return jumpSearch;
     }
     
     /**
@@ -8,7 +8,6 @@ import java.net.ServerSocket;
 import java.net.Socket;
 
 import core.Robot;
-import lejos.hardware.Sound;
 import libs.OccupancyGrid;
 
 /**
@@ -16,6 +15,7 @@ import libs.OccupancyGrid;
  * This is where the log-client attempts to connect to.
  * The robot keeps an instance of this class so that it can print out it's
  * state to it. Which is then networked to the client program.
+ * An offline server (see offline()) has no socket and drops everything, for running without a client.
  */
 public class Server {
     private Robot robot;
@@ -30,12 +30,12 @@ public class Server {
         this.robot  = robot;
         this.server = new ServerSocket(port);
         
-        Sound.beep();
+        robot.getHardware().getSpeaker().beep();
         robot.getMonitor().print("Awaiting client..");
         
         this.client = server.accept();
         
-        Sound.beep();
+        robot.getHardware().getSpeaker().beep();
         robot.getMonitor().print("CONNECTED!");
         
         this.os = client.getOutputStream();
@@ -47,14 +47,42 @@ public class Server {
         pr.writeObject("===[ CONNECTED TO EV3 BRICK ]===");
     }
     
+    private Server ( Robot robot ) {
+        this.robot = robot;
+    }
+    
+    /**
+     * Returns a server without a socket (nothing is sent), so the robot can log without a client.
+     * @param robot
+     * @return
+     */
+    public static Server offline ( Robot robot ) {
+        return new Server(robot);
+    }
+    
+    /**
+     * Returns if there is no client (nothing is sent).
+     * @return
+     */
+    public boolean isOffline () {
+        return pr == null;
+    }
+    
     /**
      * Writes the robot instance object to the stream.
      */
     public void sendStateObject () {
+        if ( isOffline() )
+            return;
+        
         Thread t = new Thread() {
             public void run() {
                 try {    	
-                    RobotState rs = new RobotState(new OccupancyGrid(robot.getGrid()), robot.getCurrentCell(), robot.isLapCompleted(), robot.getElapsedTime(), robot.getCellsMoved());
+                    // use the published snapshot, the live grid is being modified by the behaviours
+                    OccupancyGrid snapshot = robot.getGrid().getSnapshot();
+                    OccupancyGrid.GridCell currentCell = robot.getCurrentCell();
+                    
+                    RobotState rs = new RobotState(snapshot, snapshot.getCell(currentCell.x, currentCell.y), robot.isLapCompleted(), robot.getElapsedTime(), robot.getCellsMoved());
                     pr.reset();
                     pr.writeUnshared(rs);
                     pr.reset();
@@ -93,6 +121,9 @@ public class Server {
      * @param msg
      */
     public void sendString ( String msg ) {
+        if ( isOffline() )
+            return;
+        
         try {
             if( "%CLOSE%".equals(msg) )
                 pr.writeObject(msg);
@@ -111,6 +142,9 @@ public class Server {
      * Clean up method.
      */
     public void close() {
+        if ( isOffline() )
+            return;
+        
         try {
             sendString("%CLOSE%");
             client.close();